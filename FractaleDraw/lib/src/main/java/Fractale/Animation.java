@@ -0,0 +1,145 @@
+package Fractale;
+
+
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.io.IOException;
+import java.math.BigDecimal;
+
+/**
+ * Classe qui calcule un zoom sur un point sous forme d'une suite d'images PNG numérotées.
+ * Seules des images clés sont calculées, une par facteur 2 de zoom, avec SURECHANTILLONNAGE
+ * fois plus de pixels de côté que les images de l'animation ; chaque image est obtenue en
+ * rééchantillonnant l'image clé qui la contient, dont le pas est au plus deux fois plus petit
+ */
+class Animation {
+    /**
+     * le rapport entre le côté d'une image clé et celui d'une image de l'animation
+     */
+    private static final int SURECHANTILLONNAGE = 2;
+
+    /**
+     * Classe utilitaire, non instanciable
+     */
+    private Animation() {
+    }
+
+    /**
+     * Calcule les images d'un zoom géométrique du pas pasDebut au pas pasFin, centré sur le
+     * point (re, im), et les écrit dans les fichiers filename00000.png, filename00001.png...
+     * @param filename le début du nom des fichiers
+     * @param fractale la fractale à calculer
+     * @param configuration la configuration des images : taille, itérations et couleurs
+     * @param re la partie réelle du centre du zoom
+     * @param im la partie imaginaire du centre du zoom
+     * @param pasDebut le pas de la première image
+     * @param pasFin le pas de la dernière image
+     * @param images le nombre d'images
+     * @throws IOException si une image ne peut pas être écrite
+     */
+    static void execute(String filename, Fractale fractale, Configuration configuration, BigDecimal re,
+            BigDecimal im, double pasDebut, double pasFin, int images) throws IOException {
+        if (pasDebut <= 0 || pasFin <= 0)
+            throw new IllegalArgumentException("les pas de l'animation doivent être strictement positifs");
+        if (images <= 0)
+            throw new IllegalArgumentException("le nombre d'images doit être strictement positif");
+        int longueur = configuration.getLongueur();
+        int largeur = configuration.getLargeur();
+        double pasMax = Math.max(pasDebut, pasFin);
+        FractaleImage modele = new FractaleImage(fractale, configuration.copy());
+        int numeroCle = -1;
+        int cles = 0;
+        long debut = System.nanoTime();
+        for (int k = 0; k < images; k++) {
+            double pas = images == 1 ? pasDebut : pasDebut * Math.pow(pasFin / pasDebut, (double) k / (images - 1));
+            // l'image clé de pas pasMax / 2^j qui contient l'image, au plus deux fois plus fine
+            int j = Math.max(0, (int) Math.floor(Math.log(pasMax / pas) / Math.log(2) + 1e-9));
+            if (j != numeroCle) {
+                double pasCle = pasMax / Math.pow(2, j) / SURECHANTILLONNAGE;
+                Configuration c = configuration.copy();
+                c.updatePas(pasCle);
+                c.updateMinRe(re.subtract(BigDecimal.valueOf(pasCle * (longueur * SURECHANTILLONNAGE / 2))));
+                c.updateMaxIm(im.add(BigDecimal.valueOf(pasCle * (largeur * SURECHANTILLONNAGE / 2))));
+                c.updateLongueur(longueur * SURECHANTILLONNAGE);
+                c.updateLargeur(largeur * SURECHANTILLONNAGE);
+                modele.setConfiguration(c);
+                // les pixels de l'image clé précédente sont réutilisés
+                modele.aligne();
+                modele.calculImageProgressif(() -> { });
+                numeroCle = j;
+                cles++;
+            }
+            Configuration c = modele.getConfiguration();
+            BufferedImage image = reechantillonne(modele.getImage(), c.getPas(),
+                    c.getMinReExact().subtract(re).doubleValue(), c.getMaxImExact().subtract(im).doubleValue(),
+                    longueur, largeur, pas);
+            SaveImage.writeImage(String.format("%s%05d", filename, k), image);
+        }
+        System.out.println(images + " images, " + cles + " images clés, "
+                + (System.nanoTime() - debut) / 1_000_000 + " ms");
+    }
+
+    /**
+     * Calcule une image de l'animation à partir d'une image clé, chaque pixel étant la moyenne
+     * de quatre échantillons bilinéaires répartis sur sa surface
+     * @param cle l'image clé
+     * @param pasCle le pas de l'image clé
+     * @param oRe la partie réelle du pixel (0, 0) de l'image clé moins celle du centre
+     * @param oIm la partie imaginaire du pixel (0, 0) de l'image clé moins celle du centre
+     * @param longueur la longueur de l'image
+     * @param largeur la largeur de l'image
+     * @param pas le pas de l'image
+     * @return l'image de l'animation
+     */
+    private static BufferedImage reechantillonne(BufferedImage cle, double pasCle, double oRe, double oIm,
+            int longueur, int largeur, double pas) {
+        int[] source = ((DataBufferInt) cle.getRaster().getDataBuffer()).getData();
+        BufferedImage res = new BufferedImage(longueur, largeur, BufferedImage.TYPE_INT_RGB);
+        int[] pixels = ((DataBufferInt) res.getRaster().getDataBuffer()).getData();
+        int[] somme = new int[3];
+        for (int y = 0; y < largeur; y++) {
+            for (int x = 0; x < longueur; x++) {
+                somme[0] = somme[1] = somme[2] = 0;
+                for (int i = 0; i < 4; i++) {
+                    double dRe = (x - longueur / 2 + ((i & 1) == 0 ? -0.25 : 0.25)) * pas;
+                    double dIm = (largeur / 2 - y + ((i & 2) == 0 ? -0.25 : 0.25)) * pas;
+                    echantillon(source, cle.getWidth(), cle.getHeight(), (dRe - oRe) / pasCle,
+                            (oIm - dIm) / pasCle, somme);
+                }
+                pixels[y * longueur + x] = ((somme[0] / 4) << 16) | ((somme[1] / 4) << 8) | (somme[2] / 4);
+            }
+        }
+        return res;
+    }
+
+    /**
+     * Ajoute à somme les composantes de la couleur interpolée de l'image au point (u, v),
+     * en coordonnées de pixels et ramené dans l'image
+     * @param source les pixels de l'image, ligne par ligne
+     * @param longueur la longueur de l'image
+     * @param largeur la largeur de l'image
+     * @param u la colonne du point
+     * @param v la ligne du point
+     * @param somme les sommes du rouge, du vert et du bleu
+     */
+    private static void echantillon(int[] source, int longueur, int largeur, double u, double v, int[] somme) {
+        u = Math.max(0, Math.min(longueur - 1, u));
+        v = Math.max(0, Math.min(largeur - 1, v));
+        int x0 = Math.max(0, Math.min((int) u, longueur - 2));
+        int y0 = Math.max(0, Math.min((int) v, largeur - 2));
+        int x1 = Math.min(x0 + 1, longueur - 1);
+        int y1 = Math.min(y0 + 1, largeur - 1);
+        double fx = u - x0;
+        double fy = v - y0;
+        int a = source[y0 * longueur + x0];
+        int b = source[y0 * longueur + x1];
+        int c = source[y1 * longueur + x0];
+        int d = source[y1 * longueur + x1];
+        for (int k = 0; k < 3; k++) {
+            int decalage = 16 - 8 * k;
+            double haut = ((a >> decalage) & 0xFF) * (1 - fx) + ((b >> decalage) & 0xFF) * fx;
+            double bas = ((c >> decalage) & 0xFF) * (1 - fx) + ((d >> decalage) & 0xFF) * fx;
+            somme[k] += (int) Math.round(haut * (1 - fy) + bas * fy);
+        }
+    }
+}
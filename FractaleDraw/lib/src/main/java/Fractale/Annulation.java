@@ -0,0 +1,38 @@
+package Fractale;
+
+
+import java.util.concurrent.CancellationException;
+
+/**
+ * Jeton d'annulation d'un calcul : les tâches du calcul le vérifient entre deux lignes ou
+ * deux blocs de pixels et s'arrêtent dès qu'il est annulé, ce qui libère les threads du pool
+ */
+final class Annulation {
+    /**
+     * true si le calcul a été annulé
+     */
+    private volatile boolean annule;
+
+    /**
+     * Annule le calcul associé au jeton
+     */
+    void annule() {
+        annule = true;
+    }
+
+    /**
+     * @return true si le calcul associé au jeton a été annulé
+     */
+    boolean isAnnule() {
+        return annule;
+    }
+
+    /**
+     * Arrête la tâche courante si le calcul a été annulé
+     * @throws CancellationException si le calcul a été annulé
+     */
+    void verifie() {
+        if (annule)
+            throw new CancellationException("calcul annulé");
+    }
+}
@@ -0,0 +1,166 @@
+package Fractale;
+
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * Cache des indices de divergence des tuiles déjà calculées. Les tuiles les moins
+ * récemment utilisées sont retirées dès que la mémoire occupée dépasse la capacité
+ */
+class CacheTuiles {
+    /**
+     * la mémoire approximative occupée par une entrée en plus de ses indices, en octets
+     */
+    private static final long SURCOUT = 128;
+    /**
+     * la mémoire maximale occupée par les tuiles, en octets
+     */
+    private final long capacite;
+    /**
+     * la mémoire occupée par les tuiles, en octets
+     */
+    private long taille;
+    /**
+     * les tuiles, de la moins récemment utilisée à la plus récemment utilisée
+     */
+    private final LinkedHashMap<Cle, Indices> tuiles;
+
+    /**
+     * Construit un cache vide
+     * @param capacite la mémoire maximale occupée par les tuiles, en octets
+     */
+    CacheTuiles(long capacite) {
+        if (capacite <= 0)
+            throw new IllegalArgumentException("la capacité du cache doit être positive");
+        this.capacite = capacite;
+        this.tuiles = new LinkedHashMap<>(16, 0.75f, true);
+    }
+
+    /**
+     * @param cle la clé d'une tuile
+     * @return les indices de la tuile, ou null si elle n'est pas dans le cache
+     */
+    synchronized Indices get(Cle cle) {
+        return tuiles.get(cle);
+    }
+
+    /**
+     * Ajoute une tuile terminée au cache et retire les tuiles les moins récemment utilisées
+     * tant que la capacité est dépassée
+     * @param cle la clé de la tuile
+     * @param indices les indices de la tuile
+     */
+    synchronized void put(Cle cle, Indices indices) {
+        Indices ancien = tuiles.put(cle, indices);
+        if (ancien != null)
+            taille -= memoire(ancien);
+        taille += memoire(indices);
+        Iterator<Map.Entry<Cle, Indices>> it = tuiles.entrySet().iterator();
+        while (taille > capacite && it.hasNext()) {
+            Map.Entry<Cle, Indices> e = it.next();
+            if (e.getKey().equals(cle))
+                continue;
+            taille -= memoire(e.getValue());
+            it.remove();
+        }
+    }
+
+    /**
+     * @param indices les indices d'une tuile
+     * @return la mémoire occupée par une tuile, en octets
+     */
+    private static long memoire(Indices indices) {
+        return indices.memoire() + SURCOUT;
+    }
+
+    /**
+     * Clé d'une tuile : la fractale, les paramètres qui changent les indices, et la position de
+     * la tuile dans la grille des pixels. Les pixels d'une grille sont les points
+     * (phaseRe + pas * x, phaseIm - pas * y) pour x et y entiers, avec 0 <= phase < pas
+     */
+    static final class Cle {
+        /**
+         * la fractale de la tuile
+         */
+        private final Fractale fractale;
+        /**
+         * le pas de discrétisation
+         */
+        private final double pas;
+        /**
+         * la partie réelle de l'origine de la grille des pixels
+         */
+        private final BigDecimal phaseRe;
+        /**
+         * la partie imaginaire de l'origine de la grille des pixels
+         */
+        private final BigDecimal phaseIm;
+        /**
+         * la colonne de la tuile dans la grille des tuiles
+         */
+        private final BigInteger colonne;
+        /**
+         * la ligne de la tuile dans la grille des tuiles
+         */
+        private final BigInteger ligne;
+        /**
+         * le nombre maximum d'itération
+         */
+        private final int maxIter;
+        /**
+         * true si la détection des orbites périodiques est activée
+         */
+        private final boolean periodicite;
+        /**
+         * true si la tuile est calculée par subdivision, dont les indices sont approchés
+         */
+        private final boolean subdivision;
+
+        /**
+         * Construit la clé d'une tuile
+         * @param fractale la fractale de la tuile
+         * @param pas le pas de discrétisation
+         * @param phaseRe la partie réelle de l'origine de la grille des pixels
+         * @param phaseIm la partie imaginaire de l'origine de la grille des pixels
+         * @param colonne la colonne de la tuile dans la grille des tuiles
+         * @param ligne la ligne de la tuile dans la grille des tuiles
+         * @param maxIter le nombre maximum d'itération
+         * @param periodicite true si la détection des orbites périodiques est activée
+         * @param subdivision true si la tuile est calculée par subdivision
+         */
+        Cle(Fractale fractale, double pas, BigDecimal phaseRe, BigDecimal phaseIm,
+                BigInteger colonne, BigInteger ligne, int maxIter, boolean periodicite, boolean subdivision) {
+            this.fractale = fractale;
+            this.pas = pas;
+            // sans zéros inutiles pour que deux phases égales aient la même représentation
+            this.phaseRe = phaseRe.stripTrailingZeros();
+            this.phaseIm = phaseIm.stripTrailingZeros();
+            this.colonne = colonne;
+            this.ligne = ligne;
+            this.maxIter = maxIter;
+            this.periodicite = periodicite;
+            this.subdivision = subdivision;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof Cle))
+                return false;
+            Cle c = (Cle) o;
+            return pas == c.pas && maxIter == c.maxIter && periodicite == c.periodicite && subdivision == c.subdivision
+                    && colonne.equals(c.colonne) && ligne.equals(c.ligne)
+                    && phaseRe.equals(c.phaseRe) && phaseIm.equals(c.phaseIm)
+                    && fractale.equals(c.fractale);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(fractale, pas, phaseRe, phaseIm, colonne, ligne, maxIter, periodicite, subdivision);
+        }
+    }
+}
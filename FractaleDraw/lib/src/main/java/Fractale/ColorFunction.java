@@ -74,6 +74,20 @@ public final class ColorFunction {
         return Color.HSBtoRGB(h,s,b);
     }
 
+    /**
+     * @param maxIter le maximun d'itération pour le calcule des indices de divergence
+     * @param convergentColor la couleur des points convergents, -1 pour leur appliquer la fonction
+     * @return la table des couleurs associées aux indices de divergence de 0 à maxIter,
+     * la couleur de l'indice maxIter étant celle des points convergents
+     */
+    public int[] palette(int maxIter, int convergentColor){
+        int[] res = new int[maxIter + 1];
+        for (int indice = 0; indice < maxIter; indice++)
+            res[indice] = getColor(indice, maxIter);
+        res[maxIter] = (convergentColor != -1) ? convergentColor : getColor(maxIter, maxIter);
+        return res;
+    }
+
     /**
      * @return un booleen indiquant si la couleur est de type RGB
      */
@@ -1,5 +1,7 @@
 package Fractale;
 
+import java.math.BigDecimal;
+
 /**
  * Créer une configuration pour l'image d'une fractale
  */
@@ -13,21 +15,21 @@ public class Configuration {
      */
     private double pas;
     /**
-     * le minimum de l'intervalle des réels
+     * le minimum de l'intervalle des réels, en précision arbitraire pour les zooms profonds
      */
-    private double minRe;
+    private BigDecimal minRe;
     /**
      * le maximum de l'intervalle des réels
      */
-    private double maxRe;
+    private BigDecimal maxRe;
     /**
      * le minimum de l'intervalle des imaginaires
      */
-    private double minIm;
+    private BigDecimal minIm;
     /**
      * le maximum de l'intervalle des imaginaires
      */
-    private double maxIm;
+    private BigDecimal maxIm;
     /**
      * la longueur de l'image
      */
@@ -44,6 +46,23 @@ public class Configuration {
      * la couleur des points en fonciton de l'indice de divergence
      */
     private ColorFunction color;
+    /**
+     * true si la détection des orbites périodiques est activée
+     */
+    private boolean periodicite;
+    /**
+     * true si le calcul doit se faire pixel par pixel, sans le noyau vectoriel
+     */
+    private boolean scalaire;
+    /**
+     * true si l'image est calculée par subdivision de rectangles (Mariani-Silver)
+     */
+    private boolean subdivision;
+    /**
+     * true si l'état des orbites des pixels qui atteignent maxIter est gardé pour reprendre
+     * leur itération quand maxIter augmente
+     */
+    private boolean reprise;
 
     /**
      * Classe interne qui permet de construire un configuration
@@ -60,19 +79,19 @@ public class Configuration {
         /**
          * le minimum des réels de la configuration
          */
-        private double minRe;
+        private BigDecimal minRe;
         /**
          * le maximum des réels de la configuration
          */
-        private double maxRe;
+        private BigDecimal maxRe;
         /**
          * le minimum des imaginaires de la configuration
          */
-        private double minIm;
+        private BigDecimal minIm;
         /**
          * le maximum des imaginaires de la configuration
          */
-        private double maxIm;
+        private BigDecimal maxIm;
         /**
          * la longueur de l'image de la configuration
          */
@@ -89,6 +108,23 @@ public class Configuration {
          * la couleur des points en fonciton de l'indice de divergence
          */
         private ColorFunction color;
+        /**
+         * true si la détection des orbites périodiques est activée
+         */
+        private boolean periodicite;
+        /**
+         * true si le calcul doit se faire pixel par pixel, sans le noyau vectoriel
+         */
+        private boolean scalaire;
+        /**
+         * true si l'image est calculée par subdivision de rectangles (Mariani-Silver)
+         */
+        private boolean subdivision;
+        /**
+         * true si l'état des orbites des pixels qui atteignent maxIter est gardé pour reprendre
+         * leur itération quand maxIter augmente
+         */
+        private boolean reprise;
         
         /**
          * Constructeur par défaut de Builder avec les valeurs:
@@ -101,18 +137,26 @@ public class Configuration {
          * longueur = 800
          * largueur = 800
          * color = ColorFunction par défaut
+         * periodicite = false
+         * scalaire = false
+         * subdivision = false
+         * reprise = false
          */
         public Builder() {
             this.maxIter = 50;
             this.pas = 0.005;
-            this.minRe = -2;
-            this.maxRe = 1.995;
-            this.minIm = -2;
-            this.maxIm = 1.995;
+            this.minRe = new BigDecimal("-2");
+            this.maxRe = new BigDecimal("1.995");
+            this.minIm = new BigDecimal("-2");
+            this.maxIm = new BigDecimal("1.995");
             this.longueur = 800;
             this.largeur = 800;
             this.convergentColor = 0;
             this.color = new ColorFunction();
+            this.periodicite = false;
+            this.scalaire = false;
+            this.subdivision = false;
+            this.reprise = false;
         }
         
         /**
@@ -133,12 +177,25 @@ public class Configuration {
          * @return l'objet courant avec les nouvelles valeurs
          */
         public Builder planComplexe(double minRe, double maxRe, double minIm, double maxIm){
+            return planComplexe(BigDecimal.valueOf(minRe), BigDecimal.valueOf(maxRe),
+                    BigDecimal.valueOf(minIm), BigDecimal.valueOf(maxIm));
+        }
+
+        /**
+         * Modifie le plan complexe avec des valeurs en précision arbitraire et adapte la taille de l'image
+         * @param minRe le minimum des réels
+         * @param maxRe le maximum des réels
+         * @param minIm le minimum des imaginaires
+         * @param maxIm le maximum des imaginaires
+         * @return l'objet courant avec les nouvelles valeurs
+         */
+        public Builder planComplexe(BigDecimal minRe, BigDecimal maxRe, BigDecimal minIm, BigDecimal maxIm){
             this.minRe = minRe;
             this.maxRe = maxRe;
             this.minIm = minIm;
             this.maxIm = maxIm;
-            longueur = (int) Math.ceil((maxRe - minRe) / pas) + 1;
-            largeur = (int) Math.ceil((maxIm - minIm) / pas) + 1;
+            longueur = (int) Math.ceil(maxRe.subtract(minRe).doubleValue() / pas) + 1;
+            largeur = (int) Math.ceil(maxIm.subtract(minIm).doubleValue() / pas) + 1;
             return this;
         }
 
@@ -183,6 +240,42 @@ public class Configuration {
             return this;
         }
 
+        /**
+         * @param periodicite true pour activer la détection des orbites périodiques
+         * @return l'objet courant avec la valeur de son attribut periodicite égale à la valeur du paramètre
+         */
+        public Builder periodicite(boolean periodicite) {
+            this.periodicite = periodicite;
+            return this;
+        }
+
+        /**
+         * @param scalaire true pour forcer le calcul pixel par pixel
+         * @return l'objet courant avec la valeur de son attribut scalaire égale à la valeur du paramètre
+         */
+        public Builder scalaire(boolean scalaire) {
+            this.scalaire = scalaire;
+            return this;
+        }
+
+        /**
+         * @param subdivision true pour calculer l'image par subdivision de rectangles
+         * @return l'objet courant avec la valeur de son attribut subdivision égale à la valeur du paramètre
+         */
+        public Builder subdivision(boolean subdivision) {
+            this.subdivision = subdivision;
+            return this;
+        }
+
+        /**
+         * @param reprise true pour garder l'état des orbites des pixels qui atteignent maxIter
+         * @return l'objet courant avec la valeur de son attribut reprise égale à la valeur du paramètre
+         */
+        public Builder reprise(boolean reprise) {
+            this.reprise = reprise;
+            return this;
+        }
+
         /**
          * @return une Configuration à partir des attributs du Builder
          */
@@ -214,6 +307,10 @@ public class Configuration {
         this.longueur = b.longueur;
         this.convergentColor = b.convergentColor;
         this.color = b.color;
+        this.periodicite = b.periodicite;
+        this.scalaire = b.scalaire;
+        this.subdivision = b.subdivision;
+        this.reprise = b.reprise;
     }
 
     /**
@@ -227,27 +324,55 @@ public class Configuration {
      * @return la valeur de l'attribut minRe
      */
     public double getMinRe(){
-        return minRe;
+        return minRe.doubleValue();
     }
 
     /**
      * @return la valeur de l'attribut maxRe
      */
     public double getMaxRe(){
-        return maxRe;
+        return maxRe.doubleValue();
     }
 
     /**
      * @return la valeur de l'attribut minIm
      */
     public double getMinIm(){
-        return minIm;
+        return minIm.doubleValue();
     }
 
     /**
      * @return  la valeur de l'attribut maxIm
      */
     public double getMaxIm(){
+        return maxIm.doubleValue();
+    }
+
+    /**
+     * @return la valeur exacte de l'attribut minRe
+     */
+    public BigDecimal getMinReExact(){
+        return minRe;
+    }
+
+    /**
+     * @return la valeur exacte de l'attribut maxRe
+     */
+    public BigDecimal getMaxReExact(){
+        return maxRe;
+    }
+
+    /**
+     * @return la valeur exacte de l'attribut minIm
+     */
+    public BigDecimal getMinImExact(){
+        return minIm;
+    }
+
+    /**
+     * @return la valeur exacte de l'attribut maxIm
+     */
+    public BigDecimal getMaxImExact(){
         return maxIm;
     }
 
@@ -286,6 +411,43 @@ public class Configuration {
         return color;
     }
 
+    /**
+     * @return la valeur de l'attribut periodicite
+     */
+    public boolean isPeriodicite() {
+        return periodicite;
+    }
+
+    /**
+     * @return la valeur de l'attribut scalaire
+     */
+    public boolean isScalaire() {
+        return scalaire;
+    }
+
+    /**
+     * @return la valeur de l'attribut subdivision
+     */
+    public boolean isSubdivision() {
+        return subdivision;
+    }
+
+    /**
+     * @return la valeur de l'attribut reprise
+     */
+    public boolean isReprise() {
+        return reprise;
+    }
+
+    /**
+     * @return l'écart en dessous duquel deux points d'une orbite sont confondus par la
+     * détection de périodicité : nul, pour que seules les orbites qui repassent exactement par
+     * un point, donc périodiques à coup sûr, soient arrêtées et que les indices ne changent pas
+     */
+    public double getTolerance() {
+        return 0;
+    }
+
     /**
      * Met à jour la valeur de l'attribut maxIter selon celle du paramètre
      * @param maxIter le nouveau nombre maximum d'itérations
@@ -310,6 +472,38 @@ public class Configuration {
         this.color = color;
     }
 
+    /**
+     * Met à jour la valeur de l'attribut periodicite selon celle du paramètre
+     * @param periodicite true pour activer la détection des orbites périodiques
+     */
+    public void setPeriodicite(boolean periodicite){
+        this.periodicite = periodicite;
+    }
+
+    /**
+     * Met à jour la valeur de l'attribut scalaire selon celle du paramètre
+     * @param scalaire true pour forcer le calcul pixel par pixel
+     */
+    public void setScalaire(boolean scalaire){
+        this.scalaire = scalaire;
+    }
+
+    /**
+     * Met à jour la valeur de l'attribut subdivision selon celle du paramètre
+     * @param subdivision true pour calculer l'image par subdivision de rectangles
+     */
+    public void setSubdivision(boolean subdivision){
+        this.subdivision = subdivision;
+    }
+
+    /**
+     * Met à jour la valeur de l'attribut reprise selon celle du paramètre
+     * @param reprise true pour garder l'état des orbites des pixels qui atteignent maxIter
+     */
+    public void setReprise(boolean reprise){
+        this.reprise = reprise;
+    }
+
     /**
      * Met à jour la valeur de l'attribut pas selon celle du paramètre
      * en vérifiant que celle-ci est valide et met à jour la valeur des
@@ -320,14 +514,15 @@ public class Configuration {
         if (pas <= 0)
             throw new IllegalArgumentException("le pas doit être positif");
         this.pas = pas;
-        double mRe = (minRe + maxRe) / 2;
-        double mIm = (minIm + maxIm) / 2;
-        double lRe = (longueur / 2) * pas;
-        double lIm = (largeur / 2) * pas;
-        minRe = mRe - lRe;
-        maxRe = mRe + lRe;
-        minIm = mIm - lIm;
-        maxIm = mIm + lIm;
+        BigDecimal deux = BigDecimal.valueOf(2);
+        BigDecimal mRe = minRe.add(maxRe).divide(deux);
+        BigDecimal mIm = minIm.add(maxIm).divide(deux);
+        BigDecimal lRe = BigDecimal.valueOf((longueur / 2) * pas);
+        BigDecimal lIm = BigDecimal.valueOf((largeur / 2) * pas);
+        minRe = mRe.subtract(lRe);
+        maxRe = mRe.add(lRe);
+        minIm = mIm.subtract(lIm);
+        maxIm = mIm.add(lIm);
     }
 
     /**
@@ -336,9 +531,18 @@ public class Configuration {
      * @param minRe le nouveau minimum des réels
      */
     public void updateMinRe(double minRe) {
-        double d = minRe - this.minRe;
+        updateMinRe(BigDecimal.valueOf(minRe));
+    }
+
+    /**
+     * Met à jour la valeur de l'attribut minRe selon une valeur en précision arbitraire
+     * et met à jour la valeur du paramètre maxRe en conséquence
+     * @param minRe le nouveau minimum des réels
+     */
+    public void updateMinRe(BigDecimal minRe) {
+        BigDecimal d = minRe.subtract(this.minRe);
         this.minRe = minRe;
-        this.maxRe += d;
+        this.maxRe = this.maxRe.add(d);
     }
 
     /**
@@ -347,9 +551,18 @@ public class Configuration {
      * @param maxRe le nouveau maximum des réels
      */
     public void updateMaxRe(double maxRe) {
-        double d = maxRe - this.maxRe;
+        updateMaxRe(BigDecimal.valueOf(maxRe));
+    }
+
+    /**
+     * Met à jour la valeur de l'attribut maxRe selon une valeur en précision arbitraire
+     * et met à jour la valeur du paramètre minRe en conséquence
+     * @param maxRe le nouveau maximum des réels
+     */
+    public void updateMaxRe(BigDecimal maxRe) {
+        BigDecimal d = maxRe.subtract(this.maxRe);
         this.maxRe = maxRe;
-        this.minRe += d;
+        this.minRe = this.minRe.add(d);
     }
 
     /**
@@ -358,9 +571,18 @@ public class Configuration {
      * @param minIm le nouveau minimum des imaginaires
      */
     public void updateMinIm(double minIm) {
-        double d = minIm - this.minIm;
+        updateMinIm(BigDecimal.valueOf(minIm));
+    }
+
+    /**
+     * Met à jour la valeur de l'attribut minIm selon une valeur en précision arbitraire
+     * et met à jour la valeur du paramètre maxIm en conséquence
+     * @param minIm le nouveau minimum des imaginaires
+     */
+    public void updateMinIm(BigDecimal minIm) {
+        BigDecimal d = minIm.subtract(this.minIm);
         this.minIm = minIm;
-        this.maxIm += d;
+        this.maxIm = this.maxIm.add(d);
     }
 
     /**
@@ -369,9 +591,18 @@ public class Configuration {
      * @param maxIm le nouveau maximum des imaginaires
      */
     public void updateMaxIm(double maxIm) {
-        double d = maxIm - this.maxIm;
+        updateMaxIm(BigDecimal.valueOf(maxIm));
+    }
+
+    /**
+     * Met à jour la valeur de l'attribut maxIm selon une valeur en précision arbitraire
+     * et met à jour la valeur du paramètre minIm en conséquence
+     * @param maxIm le nouveau maximum des imaginaires
+     */
+    public void updateMaxIm(BigDecimal maxIm) {
+        BigDecimal d = maxIm.subtract(this.maxIm);
         this.maxIm = maxIm;
-        this.minIm += d;
+        this.minIm = this.minIm.add(d);
     }
 
     /**
@@ -383,7 +614,7 @@ public class Configuration {
         if (longueur <= 0)
             throw new IllegalArgumentException("la longueur doit être positive");
         this.longueur = longueur;
-        maxRe = (longueur - 1) * pas + minRe;
+        maxRe = minRe.add(BigDecimal.valueOf((longueur - 1) * pas));
     }
 
     /**
@@ -395,7 +626,7 @@ public class Configuration {
         if (largeur <= 0)
             throw new IllegalArgumentException("la largeur doit être positive");
         this.largeur = largeur;
-        minIm = maxIm - (largeur - 1) * pas;
+        minIm = maxIm.subtract(BigDecimal.valueOf((largeur - 1) * pas));
     }
 
     /**
@@ -413,6 +644,10 @@ public class Configuration {
         this.longueur = c.longueur;
         this.convergentColor = c.convergentColor;
         this.color = c.color;
+        this.periodicite = c.periodicite;
+        this.scalaire = c.scalaire;
+        this.subdivision = c.subdivision;
+        this.reprise = c.reprise;
     }
 
     /**
@@ -1,5 +1,11 @@
 package Fractale;
 
+import java.math.BigDecimal;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
 import javax.swing.*;
 
 /**
@@ -7,6 +13,11 @@ import javax.swing.*;
  * membre de la modelisation MVC
  */
 public class Controller {
+    /**
+     * le délai en millisecondes pendant lequel une demande d'affichage attend qu'une demande
+     * plus récente la remplace, pour regrouper les rafales de clics et de touches
+     */
+    private static final long DELAI = 40;
     /**
      * représente un modèle de Fractale par défaut
      */
@@ -19,6 +30,22 @@ public class Controller {
      * représente la vue courante
      */
     private Frame frame;
+    /**
+     * le thread qui calcule les images demandées, une à la fois
+     */
+    private final ScheduledExecutorService calculs = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread t = new Thread(r, "calcul-fractale");
+        t.setDaemon(true);
+        return t;
+    });
+    /**
+     * la dernière demande d'affichage qui n'a pas encore commencé
+     */
+    private ScheduledFuture<?> demande;
+    /**
+     * le numéro de la dernière demande d'affichage : seule l'image de cette demande est affichée
+     */
+    private long generation;
 
     /**
      * @param fImage
@@ -76,7 +103,7 @@ public class Controller {
     public void setMinRe(String minRe){
         Configuration config = fImage.getConfiguration();
         try {
-            double value = Double.parseDouble(minRe);
+            BigDecimal value = new BigDecimal(minRe);
             config.updateMinRe(value);
             frame.updateMaxRe();
         } catch (Exception e){
@@ -91,7 +118,7 @@ public class Controller {
     public void setMaxRe(String maxRe){
         Configuration config = fImage.getConfiguration();
         try {
-            double value = Double.parseDouble(maxRe);
+            BigDecimal value = new BigDecimal(maxRe);
             config.updateMaxRe(value);
             frame.updateMinRe();
         } catch (Exception e){
@@ -106,7 +133,7 @@ public class Controller {
     public void setMinIm(String minIm){
         Configuration config = fImage.getConfiguration();
         try {
-            double value = Double.parseDouble(minIm);
+            BigDecimal value = new BigDecimal(minIm);
             config.updateMinIm(value);
             frame.updateMaxIm();
         } catch (Exception e){
@@ -121,7 +148,7 @@ public class Controller {
     public void setMaxIm(String maxIm){
         Configuration config = fImage.getConfiguration();
         try {
-            double value = Double.parseDouble(maxIm);
+            BigDecimal value = new BigDecimal(maxIm);
             config.updateMaxIm(value);
             frame.updateMinIm();
         } catch (Exception e){
@@ -147,6 +174,23 @@ public class Controller {
         frame.updateMinIm();
     }
 
+    /**
+     * @param subdivision
+     * active ou désactive le calcul par subdivision de rectangles (Mariani-Silver)
+     */
+    public void setSubdivision(boolean subdivision){
+        fImage.getConfiguration().setSubdivision(subdivision);
+    }
+
+    /**
+     * @param reprise
+     * active ou désactive la conservation de l'état des orbites pour reprendre l'itération
+     * quand le nombre maximum d'itération augmente
+     */
+    public void setReprise(boolean reprise){
+        fImage.getConfiguration().setReprise(reprise);
+    }
+
     /**
      * @param mandelbrot
      * @param fonction
@@ -182,14 +226,38 @@ public class Controller {
     }
 
     /**
-     * calcule et affiche l'image correspondant à fImage dans frame
+     * calcule et affiche l'image correspondant à fImage dans frame,
+     * d'abord en basse résolution puis de plus en plus finement ;
+     * si seules les couleurs ont changé, l'image est seulement recoloriée.
+     * Une nouvelle demande annule le calcul en cours et remplace la demande en attente,
+     * qui ne commence qu'après DELAI millisecondes sans nouvelle demande ; seules les
+     * images de la dernière demande sont affichées
+     */
+    private synchronized void afficheImage(){
+        long numero = ++generation;
+        if (demande != null)
+            demande.cancel(false);
+        fImage.annule();
+        Runnable affichage = () -> {
+            if (derniere(numero))
+                frame.affiche();
+        };
+        demande = calculs.schedule(() -> {
+            if (!derniere(numero))
+                return;
+            if (fImage.colorie())
+                affichage.run();
+            else
+                fImage.calculImageProgressif(affichage);
+        }, DELAI, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * @param numero le numéro d'une demande d'affichage
+     * @return true si aucune demande plus récente n'a été faite
      */
-    private void afficheImage(){
-        Thread t = new Thread(() -> {
-            fImage.calculImage();
-            frame.affiche();
-        });
-        t.start();
+    private synchronized boolean derniere(long numero) {
+        return numero == generation;
     }
     
     /**
@@ -200,16 +268,17 @@ public class Controller {
      */
     public void deplace(int direction, int value){
         Configuration config = fImage.getConfiguration();
-        double decalage = value * config.getPas();
+        // un multiple exact du pas, pour que l'image déplacée réutilise les tuiles du cache
+        BigDecimal decalage = BigDecimal.valueOf(config.getPas()).multiply(BigDecimal.valueOf(value));
         switch (direction){
             case 0:
-                config.updateMaxIm(config.getMaxIm() + decalage); break;
+                config.updateMaxIm(config.getMaxImExact().add(decalage)); break;
             case 1: 
-                config.updateMinIm(config.getMinIm() - decalage); break;
+                config.updateMinIm(config.getMinImExact().subtract(decalage)); break;
             case 2:
-                config.updateMinRe(config.getMinRe() - decalage); break;
+                config.updateMinRe(config.getMinReExact().subtract(decalage)); break;
             case 3:
-                config.updateMaxRe(config.getMaxRe() + decalage); break;
+                config.updateMaxRe(config.getMaxReExact().add(decalage)); break;
         }
         if (direction == 0 || direction == 1){
             frame.updateMaxIm();
@@ -236,7 +305,16 @@ public class Controller {
             double x = Double.parseDouble(value);
             if (x > 0){
                 double newPas = zoom ? pas / x : pas * x;
+                Configuration essai = config.copy();
+                essai.updatePas(newPas);
+                if (!Noyau.precisionSuffisante(fImage.getFractale(), essai)) {
+                    JOptionPane.showMessageDialog(frame,
+                            "Le pas " + newPas + " est trop petit pour être calculé précisément à ces coordonnées",
+                            "Zoom", JOptionPane.WARNING_MESSAGE);
+                    return;
+                }
                 config.updatePas(newPas);
+                fImage.aligne();
                 frame.updatePas();
                 frame.updateMinRe();
                 frame.updateMaxRe();
@@ -273,9 +351,12 @@ public class Controller {
     }
 
     /**
-     *annule le calcule en cours de l'image
+     *annule le calcule en cours de l'image et la demande d'affichage en attente
      */
-    public void annule() {
+    public synchronized void annule() {
+        generation++;
+        if (demande != null)
+            demande.cancel(false);
         fImage.annule();
     }
 }
@@ -0,0 +1,215 @@
+package Fractale;
+
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.RecursiveAction;
+
+import org.apache.commons.cli.CommandLine;
+import org.apache.commons.cli.DefaultParser;
+import org.apache.commons.cli.ParseException;
+
+/**
+ * Classe qui écrit et relit les indices de divergence bruts d'une image, pour la recolorier,
+ * la découper en tuiles ou l'exporter à nouveau sans la recalculer.
+ * Le fichier est en petit-boutiste : un en-tête de TAILLE_ENTETE octets (MAGIE, VERSION,
+ * le nombre d'octets d'un indice, la longueur, la largeur, maxIter et la taille de la ligne de
+ * configuration), la ligne de configuration de SaveImage en UTF-8, des zéros jusqu'à un
+ * multiple de 8 octets, puis les indices ligne par ligne sur 2 octets (lus sans signe) si
+ * maxIter le permet, sur 4 sinon. Les indices sont écrits et relus par projection en mémoire
+ */
+class FichierIndices {
+    /**
+     * les quatre premiers octets du fichier, "FIDX"
+     */
+    private static final int MAGIE = 0x58444946;
+    /**
+     * la version du format
+     */
+    private static final int VERSION = 1;
+    /**
+     * la taille de la partie fixe de l'en-tête, en octets
+     */
+    private static final int TAILLE_ENTETE = 28;
+    /**
+     * le nombre approximatif de pixels d'une bande calculée
+     */
+    private static final long PIXELS_BANDE = 1L << 22;
+
+    /**
+     * Classe utilitaire, non instanciable
+     */
+    private FichierIndices() {
+    }
+
+    /**
+     * Calcule l'image d'une FractaleImage par bandes, ou reprend ses indices s'ils sont déjà
+     * connus, et écrit ses indices de divergence dans un fichier : chaque bande est projetée
+     * en mémoire et remplie en parallèle par le pool de calcul
+     * @param filename le nom du fichier
+     * @param modele le modèle
+     * @throws IOException si le fichier ne peut pas être écrit ou si le calcul a été interrompu
+     */
+    static void ecrit(String filename, FractaleImage modele) throws IOException {
+        Configuration config = modele.getConfiguration();
+        int longueur = config.getLongueur();
+        int largeur = config.getLargeur();
+        int octets = Indices.octets(config.getMaxIter());
+        byte[] ligne = SaveImage.ligneConfiguration(modele.getFractale(), config).getBytes(StandardCharsets.UTF_8);
+        int debut = (TAILLE_ENTETE + ligne.length + 7) & ~7;
+        int hauteur = (int) Math.max(1, Math.min(largeur, PIXELS_BANDE / longueur));
+        try (FileChannel canal = FileChannel.open(Paths.get(filename), StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            ByteBuffer entete = ByteBuffer.allocate(debut).order(ByteOrder.LITTLE_ENDIAN);
+            entete.putInt(MAGIE).putInt(VERSION).putInt(octets).putInt(longueur).putInt(largeur)
+                    .putInt(config.getMaxIter()).putInt(ligne.length).put(ligne);
+            entete.clear();
+            while (entete.hasRemaining())
+                canal.write(entete);
+            for (int y = 0; y < largeur; y += hauteur) {
+                int lignes = Math.min(hauteur, largeur - y);
+                FractaleImage bande = modele.bande(y, lignes);
+                Indices indices = bande.getIndices();
+                if (indices == null) {
+                    bande.calculImage();
+                    indices = bande.getIndices();
+                    if (indices == null)
+                        throw new IOException("le calcul de l'image a été interrompu");
+                }
+                MappedByteBuffer zone = canal.map(FileChannel.MapMode.READ_WRITE,
+                        debut + (long) y * longueur * octets, (long) lignes * longueur * octets);
+                FractaleImage.pool().invoke(new Copie(indices, zone, octets, longueur, 0, lignes));
+                zone.force();
+            }
+        }
+    }
+
+    /**
+     * Relit un fichier d'indices : les indices sont projetés en mémoire et ne sont lus qu'au
+     * moment où ils sont coloriés
+     * @param filename le nom du fichier
+     * @return une FractaleImage de la fractale et de la configuration du fichier, dont les
+     * indices de divergence sont ceux du fichier
+     * @throws IOException si le fichier ne peut pas être lu ou n'est pas un fichier d'indices
+     */
+    static FractaleImage lit(String filename) throws IOException {
+        try (FileChannel canal = FileChannel.open(Paths.get(filename), StandardOpenOption.READ)) {
+            ByteBuffer entete = lit(canal, 0, TAILLE_ENTETE);
+            if (entete.getInt() != MAGIE || entete.getInt() != VERSION)
+                throw new IOException(filename + " n'est pas un fichier d'indices");
+            int octets = entete.getInt();
+            int longueur = entete.getInt();
+            int largeur = entete.getInt();
+            int maxIter = entete.getInt();
+            int taille = entete.getInt();
+            if (octets != Indices.octets(maxIter) || longueur <= 0 || largeur <= 0 || taille < 0)
+                throw new IOException(filename + " : en-tête invalide");
+            String ligne = new String(lit(canal, TAILLE_ENTETE, taille).array(), StandardCharsets.UTF_8);
+            CommandLine line = new DefaultParser().parse(Main.configOptions(), ligne.split(" "), true);
+            Fractale fractale = Main.parseFractale(line);
+            Configuration config = Main.parseConfiguration(line);
+            if (config.getLongueur() != longueur || config.getLargeur() != largeur || config.getMaxIter() != maxIter)
+                throw new IOException(filename + " : la configuration ne correspond pas aux indices");
+            long debut = (TAILLE_ENTETE + taille + 7) & ~7L;
+            long n = (long) longueur * largeur;
+            if (canal.size() < debut + n * octets)
+                throw new IOException(filename + " est incomplet");
+            return new FractaleImage(fractale, config, Indices.projetes(canal, debut, n, octets));
+        } catch (ParseException | IllegalArgumentException e) {
+            throw new IOException(filename + " : " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * @param canal le fichier
+     * @param position la position des octets à lire
+     * @param taille le nombre d'octets à lire
+     * @return les octets lus, en petit-boutiste
+     * @throws IOException si le fichier est trop court ou ne peut pas être lu
+     */
+    private static ByteBuffer lit(FileChannel canal, long position, int taille) throws IOException {
+        ByteBuffer res = ByteBuffer.allocate(taille).order(ByteOrder.LITTLE_ENDIAN);
+        while (res.hasRemaining())
+            if (canal.read(res, position + res.position()) < 0)
+                throw new IOException("fin de fichier inattendue");
+        res.flip();
+        return res;
+    }
+
+    /**
+     * Classe qui copie en parallèle un intervalle de lignes d'indices dans une bande projetée
+     */
+    private static class Copie extends RecursiveAction {
+        /**
+         * les indices de la bande
+         */
+        private final Indices indices;
+        /**
+         * la bande projetée
+         */
+        private final ByteBuffer zone;
+        /**
+         * le nombre d'octets d'un indice
+         */
+        private final int octets;
+        /**
+         * la longueur de l'image
+         */
+        private final int longueur;
+        /**
+         * le numéro de la première ligne à copier
+         */
+        private final int fromLigne;
+        /**
+         * le numéro de la ligne qui suit la dernière ligne à copier
+         */
+        private final int toLigne;
+
+        /**
+         * @param indices les indices de la bande
+         * @param zone la bande projetée
+         * @param octets le nombre d'octets d'un indice
+         * @param longueur la longueur de l'image
+         * @param fromLigne la première ligne à copier
+         * @param toLigne la ligne qui suit la dernière ligne à copier
+         */
+        private Copie(Indices indices, ByteBuffer zone, int octets, int longueur, int fromLigne, int toLigne) {
+            this.indices = indices;
+            this.zone = zone;
+            this.octets = octets;
+            this.longueur = longueur;
+            this.fromLigne = fromLigne;
+            this.toLigne = toLigne;
+        }
+
+        @Override
+        protected void compute() {
+            if (toLigne - fromLigne <= 16) {
+                // une vue propre à la tâche, car les ByteBuffer ne sont pas sûrs entre threads
+                ByteBuffer sortie = zone.duplicate().order(ByteOrder.LITTLE_ENDIAN);
+                int[] ligne = new int[longueur];
+                for (int y = fromLigne; y < toLigne; y++) {
+                    indices.copie(y * longueur, ligne, 0, longueur);
+                    int position = y * longueur * octets;
+                    for (int x = 0; x < longueur; x++) {
+                        if (octets == 2)
+                            sortie.putShort(position + 2 * x, (short) ligne[x]);
+                        else
+                            sortie.putInt(position + 4 * x, ligne[x]);
+                    }
+                }
+            }
+            else {
+                int middle = (fromLigne + toLigne) / 2;
+                invokeAll(new Copie(indices, zone, octets, longueur, fromLigne, middle),
+                        new Copie(indices, zone, octets, longueur, middle, toLigne));
+            }
+        }
+    }
+}
@@ -4,13 +4,80 @@ package Fractale;
  * Classe abstraite représentant une fractale
  */
 public abstract class Fractale {
+    /**
+     * le carré du module au delà duquel un point diverge.
+     * Math.nextUp(4) est le plus grand double dont la racine carrée arrondie vaut 2,
+     * ce qui donne les mêmes indices que le test module() <= 2
+     */
+    static final double BORNE = Math.nextUp(4.0);
 
     /**
      * @param z0 le point surlequel on calcule l'indice de divergence
      * @param maxIter le nombre maximum d'itération pour le calcul
      * @return l'indicence de divergence au point z0
      */
-    public abstract int divergenceIndex(Complexe z0, int maxIter);
+    public int divergenceIndex(Complexe z0, int maxIter) {
+        return divergenceIndex(z0.re, z0.im, maxIter);
+    }
+
+    /**
+     * Calcule l'indice de divergence sans passer par des objets Complexe
+     * @param re la partie réelle du point surlequel on calcule l'indice de divergence
+     * @param im la partie imaginaire du point surlequel on calcule l'indice de divergence
+     * @param maxIter le nombre maximum d'itération pour le calcul
+     * @return l'indicence de divergence au point (re, im)
+     */
+    public abstract int divergenceIndex(double re, double im, int maxIter);
+
+    /**
+     * Calcule l'indice de divergence en détectant les orbites périodiques (méthode de Brent) :
+     * dès que l'orbite repasse à moins de tolerance d'un point mémorisé, sur chaque partie, le
+     * point est considéré convergent et maxIter est renvoyé. Avec une tolérance nulle l'orbite
+     * doit repasser exactement par le point : l'itération étant déterministe, elle est alors
+     * périodique pour toujours et l'indice est exactement celui de divergenceIndex sans détection
+     * @param re la partie réelle du point surlequel on calcule l'indice de divergence
+     * @param im la partie imaginaire du point surlequel on calcule l'indice de divergence
+     * @param maxIter le nombre maximum d'itération pour le calcul
+     * @param tolerance l'écart en dessous duquel deux points de l'orbite sont confondus
+     * @return l'indicence de divergence au point (re, im)
+     */
+    public int divergenceIndex(double re, double im, int maxIter, double tolerance) {
+        return divergenceIndex(re, im, maxIter);
+    }
+
+    /**
+     * Calcule l'indice de divergence avec détection des orbites périodiques en comptant les
+     * itérations faites, qui sont moins nombreuses que l'indice quand l'itération est arrêtée
+     * par une orbite périodique. Par défaut rien n'est détecté et le compte est l'indice
+     * @param re la partie réelle du point surlequel on calcule l'indice de divergence
+     * @param im la partie imaginaire du point surlequel on calcule l'indice de divergence
+     * @param maxIter le nombre maximum d'itération pour le calcul
+     * @param tolerance l'écart en dessous duquel deux points de l'orbite sont confondus
+     * @return le nombre n d'itérations faites, qui est l'indice de divergence, ou -1 - n si le
+     * point a été reconnu intérieur après n itérations, son indice étant alors maxIter
+     */
+    int iterations(double re, double im, int maxIter, double tolerance) {
+        return divergenceIndex(re, im, maxIter, tolerance);
+    }
+
+    /**
+     * Reprend l'itération d'un point depuis l'état de son orbite après ite itérations.
+     * Par défaut il n'y a pas d'état et le point est recalculé depuis le début
+     * @param re la partie réelle du point
+     * @param im la partie imaginaire du point
+     * @param z l'état de l'orbite {re, im} après ite itérations, ignoré si ite vaut 0 ;
+     * remplacé par l'état final, ou par NaN s'il n'y a pas d'état à reprendre
+     * (point intérieur, orbite périodique)
+     * @param ite le nombre d'itérations déjà faites
+     * @param maxIter le nombre maximum d'itération pour le calcul
+     * @param tolerance l'écart de détection des orbites périodiques, négatif pour ne pas les détecter
+     * @return l'indicence de divergence au point (re, im)
+     */
+    int reprise(double re, double im, double[] z, int ite, int maxIter, double tolerance) {
+        z[0] = Double.NaN;
+        z[1] = Double.NaN;
+        return tolerance >= 0 ? divergenceIndex(re, im, maxIter, tolerance) : divergenceIndex(re, im, maxIter);
+    }
 
     /**
      * @return une copie d'une Fractale
@@ -2,10 +2,19 @@ package Fractale;
 
 
 import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.math.RoundingMode;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ForkJoinPool;
 import java.util.concurrent.RecursiveAction;
+import java.util.stream.IntStream;
 
 
 /**
@@ -25,9 +34,37 @@ public class FractaleImage {
      */
     private BufferedImage image;
     /**
-     * la liste des thread en cours
+     * les jetons d'annulation des calculs en cours
      */
-    private List<ForkJoinPool> threads;
+    private final Set<Annulation> enCours;
+    /**
+     * le pool partagé par tous les calculs, créé au premier calcul
+     */
+    private static ForkJoinPool pool;
+    /**
+     * le nombre de threads du pool, 0 pour un thread par processeur
+     */
+    private static int parallelisme;
+    /**
+     * l'écart entre deux pixels calculés lors de la première passe d'un calcul progressif
+     */
+    private static final int ECART_INITIAL = 4;
+    /**
+     * le côté des tuiles en pixels, multiple de ECART_INITIAL
+     */
+    private static final int TAILLE_TUILE = 64;
+    /**
+     * la mémoire maximale occupée par le cache des tuiles, en octets
+     */
+    private static final long CAPACITE_CACHE = 64L << 20;
+    /**
+     * les tuiles déjà calculées
+     */
+    private final CacheTuiles cache;
+    /**
+     * la dernière image calculée, dont les pixels sont réutilisés par l'image suivante
+     */
+    private Rendu rendu;
 
     /**
      * Construit une FractaleImage à partir d'une fractale et d'une configuration
@@ -37,7 +74,20 @@ public class FractaleImage {
     public FractaleImage(Fractale fractale, Configuration configuration) {
         this.fractale = fractale;
         this.configuration = configuration;
-        threads = new ArrayList<>();
+        enCours = ConcurrentHashMap.newKeySet();
+        cache = new CacheTuiles(CAPACITE_CACHE);
+    }
+
+    /**
+     * Construit une FractaleImage dont les indices de divergence sont déjà connus : tant que
+     * seules les couleurs de la configuration changent, l'image est coloriée sans être calculée
+     * @param fractale la fractale à afficher
+     * @param configuration la configuration de la fractale
+     * @param indices les indices de divergence des pixels de l'image, ligne par ligne
+     */
+    FractaleImage(Fractale fractale, Configuration configuration, Indices indices) {
+        this(fractale, configuration);
+        rendu = new Rendu(fractale, configuration.copy(), indices);
     }
 
     /**
@@ -77,116 +127,1204 @@ public class FractaleImage {
         this.configuration = configuration;
     }
 
+    /**
+     * Fixe le nombre de threads du pool de calcul partagé par toutes les images. Les calculs
+     * en cours se terminent dans l'ancien pool
+     * @param threads le nombre de threads, 0 pour un thread par processeur
+     */
+    public static synchronized void setParallelisme(int threads) {
+        if (threads < 0)
+            throw new IllegalArgumentException("le nombre de threads doit être positif");
+        parallelisme = threads;
+        if (pool != null) {
+            pool.shutdown();
+            pool = null;
+        }
+    }
+
+    /**
+     * @return le pool de calcul partagé par toutes les images
+     */
+    static synchronized ForkJoinPool pool() {
+        if (pool == null)
+            pool = parallelisme > 0 ? new ForkJoinPool(parallelisme) : new ForkJoinPool();
+        return pool;
+    }
+
     /**
      * Calcul l'image selon la configuration associée
      */
     public void calculImage() {
-        BufferedImage result = new BufferedImage(configuration.getLongueur(), configuration.getLargeur(), BufferedImage.TYPE_INT_RGB);
-        Calcul work = new Calcul(result, 0, configuration.getLargeur());
-        ForkJoinPool pool = new ForkJoinPool();
-        threads.add(pool);
+        calcul(false, null);
+    }
+
+    /**
+     * Calcul l'image selon la configuration associée en plusieurs passes de plus en plus fines :
+     * un pixel sur 16, puis un sur 4, puis tous les pixels. Chaque passe réutilise les indices
+     * des passes précédentes et l'image est mise à jour à la fin de chaque passe
+     * @param affichage appelé à la fin de chaque passe, quand l'image est mise à jour
+     */
+    public void calculImageProgressif(Runnable affichage) {
+        calcul(true, affichage);
+    }
+
+    /**
+     * Calcul l'image selon la configuration associée. Le calcul progressif passe par les
+     * tuiles et leur cache tant que les doubles suffisent, ou reprend la dernière image si
+     * seul maxIter a augmenté ; les zooms profonds sont calculés d'un bloc. Le calcul
+     * travaille sur une copie de la configuration, prise une fois pour toutes : l'interface
+     * peut modifier la configuration pendant le calcul
+     * @param progressif true pour calculer l'image en plusieurs passes
+     * @param affichage appelé à la fin de chaque passe si progressif vaut true
+     */
+    private void calcul(boolean progressif, Runnable affichage) {
+        ForkJoinPool pool = pool();
+        Annulation annulation = new Annulation();
+        enCours.add(annulation);
+        try {
+            Configuration config = configuration.copy();
+            Rendu r = rendu;
+            if (progressif && Noyau.precisionDouble(config) && r != null && r.prolonge(fractale, config))
+                calculReprise(pool, annulation, config, r, affichage);
+            else if (progressif && Noyau.precisionDouble(config))
+                calculTuiles(pool, annulation, config, affichage);
+            else
+                calculPlein(pool, annulation, config, progressif, affichage);
+        } catch (CancellationException e){
+        	// si le calcul a été interrompu
+        } finally {
+            enCours.remove(annulation);
+        }
+    }
+
+    /**
+     * Calcul l'image d'un bloc, sans passer par les tuiles. En mode progressif, les pixels
+     * de l'image précédente qui coïncident sont réutilisés
+     * @param pool le pool qui exécute le calcul
+     * @param annulation le jeton d'annulation du calcul
+     * @param config la configuration de l'image, qui ne doit plus être modifiée
+     * @param progressif true pour calculer l'image en plusieurs passes
+     * @param affichage appelé à la fin de chaque passe si progressif vaut true
+     */
+    private void calculPlein(ForkJoinPool pool, Annulation annulation, Configuration config, boolean progressif,
+            Runnable affichage) {
+        int longueur = config.getLongueur();
+        int largeur = config.getLargeur();
+        int[] indices = new int[longueur * largeur];
+        // l'état des orbites n'est gardé que là où la reprise est possible
+        Noyau noyau = config.isReprise() && Noyau.precisionDouble(config)
+                ? new NoyauOrbites(fractale, config) : Noyau.pour(fractale, config);
+        int[] palette = palette(config);
+        Arrays.fill(indices, -1);
+        Rendu precedent = rendu;
+        if (progressif && precedent != null)
+            precedent.copie(fractale, config, indices);
+        // les aperçus ne valent la peine que si une grande partie de l'image est inconnue
+        int premier = 4 * Arrays.stream(indices).filter(i -> i < 0).count() < indices.length ? 1 : ECART_INITIAL;
+        if (progressif) {
+            for (int ecart = premier; ecart > 1; ecart /= 2) {
+                pool.invoke(new Passe(annulation, noyau, indices, longueur, ecart, ecart == premier, 0, longueur, 0, largeur));
+                BufferedImage apercu = new BufferedImage(longueur, largeur, BufferedImage.TYPE_INT_RGB);
+                pool.invoke(new Coloration(annulation, config.getMaxIter(), config.getConvergentColor(), config.getColor(), palette,
+                        Indices.de(indices), apercu, ecart, 0, 0, 0, largeur));
+                image = apercu;
+                affichage.run();
+            }
+        }
+        if (config.isSubdivision())
+            pool.invoke(new Subdivision(annulation, noyau, indices, longueur, 0, 0, longueur, largeur));
+        else if (progressif)
+            pool.invoke(new Passe(annulation, noyau, indices, longueur, 1, premier == 1, 0, longueur, 0, largeur));
+        else
+            pool.invoke(Calcul.image(pool, annulation, noyau, indices, longueur, largeur));
+        BufferedImage result = new BufferedImage(longueur, largeur, BufferedImage.TYPE_INT_RGB);
+        pool.invoke(new Coloration(annulation, config.getMaxIter(), config.getConvergentColor(), config.getColor(), palette,
+                Indices.de(indices), result, 1, 0, 0, 0, largeur));
+        image = result;
+        Rendu.Orbites orbites = null;
+        if (noyau instanceof NoyauOrbites)
+            orbites = Rendu.Orbites.de(indices, config.getMaxIter(), ((NoyauOrbites) noyau).zRe,
+                    ((NoyauOrbites) noyau).zIm, false);
+        rendu = new Rendu(fractale, config, Indices.compacts(indices, config.getMaxIter()), orbites);
+        if (progressif)
+            affichage.run();
+    }
+
+    /**
+     * Calcul l'image par tuiles de TAILLE_TUILE pixels de côté, alignées sur une grille qui ne
+     * dépend que du pas et de la position des pixels dans le plan complexe. Les tuiles déjà
+     * dans le cache sont réutilisées. Pour les autres, les pixels de l'image précédente qui
+     * coïncident sont copiés, puis seuls les pixels visibles encore inconnus sont calculés
+     * en plusieurs passes ; les tuiles complètes sont ajoutées au cache
+     * @param pool le pool qui exécute le calcul
+     * @param annulation le jeton d'annulation du calcul
+     * @param config la configuration de l'image, qui ne doit plus être modifiée
+     * @param affichage appelé à la fin de chaque passe
+     */
+    private void calculTuiles(ForkJoinPool pool, Annulation annulation, Configuration config, Runnable affichage) {
+        int longueur = config.getLongueur();
+        int largeur = config.getLargeur();
+        double pas = config.getPas();
+        // le pas décimal, pour que les déplacements d'un nombre entier de pixels gardent la même grille
+        BigDecimal pasExact = BigDecimal.valueOf(pas);
+        BigInteger taille = BigInteger.valueOf(TAILLE_TUILE);
+        // position du pixel (0, 0) dans la grille des pixels
+        BigInteger x0 = config.getMinReExact().divide(pasExact, 0, RoundingMode.FLOOR).toBigInteger();
+        BigInteger y0 = config.getMaxImExact().divide(pasExact, 0, RoundingMode.FLOOR).toBigInteger().negate();
+        BigDecimal phaseRe = config.getMinReExact().subtract(pasExact.multiply(new BigDecimal(x0)));
+        BigDecimal phaseIm = config.getMaxImExact().add(pasExact.multiply(new BigDecimal(y0)));
+        int decalageX = x0.mod(taille).intValue();
+        int decalageY = y0.mod(taille).intValue();
+        BigInteger colonne0 = x0.subtract(BigInteger.valueOf(decalageX)).divide(taille);
+        BigInteger ligne0 = y0.subtract(BigInteger.valueOf(decalageY)).divide(taille);
+        int nx = (decalageX + longueur + TAILLE_TUILE - 1) / TAILLE_TUILE;
+        int ny = (decalageY + largeur + TAILLE_TUILE - 1) / TAILLE_TUILE;
+        int[] palette = palette(config);
+        Rendu precedent = rendu;
+
+        Indices[] tuiles = new Indices[nx * ny];
+        // les noyaux des tuiles calculées, qui gardent l'état des orbites si la reprise est demandée
+        Noyau[] noyaux = new Noyau[nx * ny];
+        List<Tuile> aCalculer = new ArrayList<>();
+        for (int j = 0; j < ny; j++) {
+            for (int i = 0; i < nx; i++) {
+                BigInteger colonne = colonne0.add(BigInteger.valueOf(i));
+                BigInteger ligne = ligne0.add(BigInteger.valueOf(j));
+                CacheTuiles.Cle cle = new CacheTuiles.Cle(fractale, pas, phaseRe, phaseIm, colonne, ligne,
+                        config.getMaxIter(), config.isPeriodicite(), config.isSubdivision());
+                Indices tuile = cache.get(cle);
+                if (tuile == null) {
+                    int[] valeurs = new int[TAILLE_TUILE * TAILLE_TUILE];
+                    tuile = Indices.de(valeurs);
+                    Arrays.fill(valeurs, -1);
+                    Configuration c = config.copy();
+                    c.updateLongueur(TAILLE_TUILE);
+                    c.updateLargeur(TAILLE_TUILE);
+                    c.updateMinRe(phaseRe.add(pasExact.multiply(new BigDecimal(colonne.multiply(taille)))));
+                    c.updateMaxIm(phaseIm.subtract(pasExact.multiply(new BigDecimal(ligne.multiply(taille)))));
+                    if (precedent != null)
+                        precedent.copie(fractale, c, valeurs);
+                    noyaux[j * nx + i] = config.isReprise() ? new NoyauOrbites(fractale, c) : Noyau.pour(fractale, c);
+                    aCalculer.add(new Tuile(cle, noyaux[j * nx + i], valeurs,
+                            Math.max(0, decalageX - i * TAILLE_TUILE), Math.max(0, decalageY - j * TAILLE_TUILE),
+                            Math.min(TAILLE_TUILE, decalageX + longueur - i * TAILLE_TUILE),
+                            Math.min(TAILLE_TUILE, decalageY + largeur - j * TAILLE_TUILE)));
+                }
+                tuiles[j * nx + i] = tuile;
+            }
+        }
+
+        // les aperçus ne valent la peine que si une grande partie de l'image est inconnue
+        long inconnus = 0;
+        for (Tuile t : aCalculer)
+            for (int y = t.y0; y < t.y1; y++)
+                for (int x = t.x0; x < t.x1; x++)
+                    if (t.indices[y * TAILLE_TUILE + x] < 0)
+                        inconnus++;
+        int premier = 4 * inconnus < (long) longueur * largeur ? 1 : ECART_INITIAL;
+        int[] indices = new int[longueur * largeur];
+        // l'état des orbites de l'image ; les pixels des tuiles prises dans le cache n'en ont pas
+        double[] zRe = null;
+        double[] zIm = null;
+        if (config.isReprise()) {
+            zRe = new double[longueur * largeur];
+            zIm = new double[longueur * largeur];
+            Arrays.fill(zRe, Double.POSITIVE_INFINITY);
+        }
+        for (int ecart = premier; ecart >= 1; ecart /= 2) {
+            pool.invoke(new PasseTuiles(annulation, aCalculer, ecart, ecart == premier, config.isSubdivision()));
+            if (ecart == 1) {
+                // les tuiles qui dépassent de l'image ne sont gardées que si elles sont complètes
+                for (Tuile t : aCalculer)
+                    if (t.complete())
+                        cache.put(t.cle, Indices.compacts(t.indices, config.getMaxIter()));
+            }
+            for (int y = 0; y < largeur; y++) {
+                int j = (y + decalageY) / TAILLE_TUILE;
+                int ly = (y + decalageY) % TAILLE_TUILE;
+                for (int x = 0; x < longueur; ) {
+                    int lx = (x + decalageX) % TAILLE_TUILE;
+                    int n = Math.min(TAILLE_TUILE - lx, longueur - x);
+                    int k = j * nx + (x + decalageX) / TAILLE_TUILE;
+                    tuiles[k].copie(ly * TAILLE_TUILE + lx, indices, y * longueur + x, n);
+                    if (ecart == 1 && zRe != null && noyaux[k] != null) {
+                        NoyauOrbites o = (NoyauOrbites) noyaux[k];
+                        System.arraycopy(o.zRe, ly * TAILLE_TUILE + lx, zRe, y * longueur + x, n);
+                        System.arraycopy(o.zIm, ly * TAILLE_TUILE + lx, zIm, y * longueur + x, n);
+                    }
+                    x += n;
+                }
+            }
+            BufferedImage apercu = new BufferedImage(longueur, largeur, BufferedImage.TYPE_INT_RGB);
+            pool.invoke(new Coloration(annulation, config.getMaxIter(), config.getConvergentColor(), config.getColor(), palette,
+                    Indices.de(indices), apercu, ecart, decalageX, decalageY, 0, largeur));
+            image = apercu;
+            if (ecart == 1)
+                rendu = new Rendu(fractale, config, Indices.compacts(indices, config.getMaxIter()),
+                        zRe == null ? null : Rendu.Orbites.de(indices, config.getMaxIter(), zRe, zIm, true));
+            affichage.run();
+        }
+    }
+
+    /**
+     * Recolorie la dernière image calculée selon les couleurs de la configuration, sans
+     * recalculer la fractale, si seules les couleurs ont changé depuis son calcul
+     * @return true si l'image a été recoloriée, false si elle doit être recalculée
+     */
+    public boolean colorie() {
+        Configuration config = configuration.copy();
+        Rendu r = rendu;
+        if (r == null || !r.meme(fractale, config))
+            return false;
+        Annulation annulation = new Annulation();
+        enCours.add(annulation);
         try {
-            pool.invoke(work);
-            threads.remove(pool);
+            BufferedImage result = new BufferedImage(config.getLongueur(), config.getLargeur(), BufferedImage.TYPE_INT_RGB);
+            pool().invoke(new Coloration(annulation, config.getMaxIter(), config.getConvergentColor(), config.getColor(),
+                    palette(config), r.getIndices(), result, 1, 0, 0, 0, config.getLargeur()));
             image = result;
-        } catch (Exception e){
+        } catch (CancellationException e){
         	// si le calcul a été interrompu
+        } finally {
+            enCours.remove(annulation);
+        }
+        return true;
+    }
+
+    /**
+     * @return les indices de divergence de la dernière image calculée, ou null si aucune image
+     * n'a été calculée ou si la fractale, le plan complexe ou maxIter ont changé depuis
+     */
+    Indices getIndices() {
+        Rendu r = rendu;
+        return r != null && r.meme(fractale, configuration) ? r.getIndices() : null;
+    }
+
+    /**
+     * @param y la première ligne de la bande
+     * @param lignes le nombre de lignes de la bande
+     * @return une FractaleImage de la bande de l'image qui commence à la ligne y, qui reprend
+     * les indices de divergence déjà connus de l'image
+     */
+    FractaleImage bande(int y, int lignes) {
+        Configuration c = configuration.copy();
+        BigDecimal pas = BigDecimal.valueOf(configuration.getPas());
+        c.updateMaxIm(configuration.getMaxImExact().subtract(pas.multiply(BigDecimal.valueOf(y))));
+        c.updateLargeur(lignes);
+        Indices connus = getIndices();
+        if (connus == null)
+            return new FractaleImage(fractale, c);
+        int longueur = configuration.getLongueur();
+        return new FractaleImage(fractale, c, connus.sous((long) y * longueur));
+    }
+
+    /**
+     * Déplace le plan complexe de moins d'un pixel pour que les pixels de la prochaine image
+     * coïncident avec ceux de la dernière image calculée, quand l'un des pas est un multiple
+     * entier de l'autre (zoom ou dézoom d'un facteur entier). Les pixels communs ne sont alors
+     * pas recalculés
+     */
+    public void aligne() {
+        if (rendu != null)
+            rendu.aligne(configuration);
+    }
+
+    /**
+     * @param config la configuration de l'image
+     * @return la table des couleurs des indices de divergence de 0 à maxIter, ou null si elle
+     * aurait plus d'entrées que l'image n'a de pixels et coûterait plus qu'elle ne ferait gagner
+     */
+    private static int[] palette(Configuration config) {
+        if (config.getMaxIter() >= (long) config.getLongueur() * config.getLargeur())
+            return null;
+        return config.getColor().palette(config.getMaxIter(), config.getConvergentColor());
+    }
+
+    /**
+     * Calcul l'image en reprenant la dernière image calculée avec un maxIter plus petit : les
+     * pixels qui ont divergé gardent leur indice et seuls ceux qui ont atteint l'ancien maxIter
+     * sont itérés, depuis l'état de leur orbite s'il a été gardé et depuis le début sinon.
+     * Si la configuration le demande, l'état des orbites est gardé pour la reprise suivante
+     * @param pool le pool qui exécute le calcul
+     * @param annulation le jeton d'annulation du calcul
+     * @param config la configuration de l'image, qui ne doit plus être modifiée
+     * @param ancien le rendu de la dernière image, que l'image prolonge
+     * @param affichage appelé quand l'image est mise à jour
+     */
+    private void calculReprise(ForkJoinPool pool, Annulation annulation, Configuration config, Rendu ancien,
+            Runnable affichage) {
+        int ancienMax = ancien.getMaxIter();
+        int maxIter = config.getMaxIter();
+        int[] indices = new int[config.getLongueur() * config.getLargeur()];
+        ancien.getIndices().copie(0, indices, 0, indices.length);
+        Rendu.Orbites orbites = ancien.getOrbites();
+        // les pixels repris depuis l'état de leur orbite, puis ceux itérés depuis le début
+        int[] positions;
+        int[] inconnues;
+        if (orbites != null) {
+            positions = orbites.positions;
+            inconnues = orbites.inconnues;
+        }
+        else {
+            positions = new int[0];
+            inconnues = IntStream.range(0, indices.length).filter(i -> indices[i] == ancienMax).toArray();
+        }
+        int n = positions.length;
+        int[] pixels = Arrays.copyOf(positions, n + inconnues.length);
+        System.arraycopy(inconnues, 0, pixels, n, inconnues.length);
+        double[] zRe = new double[pixels.length];
+        double[] zIm = new double[pixels.length];
+        if (orbites != null) {
+            System.arraycopy(orbites.zRe, 0, zRe, 0, n);
+            System.arraycopy(orbites.zIm, 0, zIm, 0, n);
+        }
+        // les pixels sans orbite à reprendre sont intérieurs
+        for (int i = 0; i < indices.length; i++)
+            if (indices[i] == ancienMax)
+                indices[i] = maxIter;
+
+        double[] re = new double[config.getLongueur()];
+        double[] im = new double[config.getLargeur()];
+        boolean grille = orbites == null || orbites.grille;
+        if (grille)
+            coordonneesTuiles(config, re, im);
+        else {
+            // les coordonnées des pixels telles que l'image entière les calcule
+            for (int x = 0; x < re.length; x++)
+                re[x] = config.getMinRe() + (config.getPas() * x);
+            for (int y = 0; y < im.length; y++)
+                im[y] = config.getMaxIm() - (config.getPas() * y);
+        }
+        pool.invoke(new Reprise(annulation, config, re, im, indices, pixels, zRe, zIm, ancienMax, 0, n));
+        pool.invoke(new Reprise(annulation, config, re, im, indices, pixels, zRe, zIm, 0, n, pixels.length));
+
+        Rendu.Orbites suite = null;
+        if (config.isReprise()) {
+            int[] restants = IntStream.range(0, pixels.length)
+                    .filter(i -> indices[pixels[i]] == maxIter && !Double.isNaN(zRe[i])).toArray();
+            suite = new Rendu.Orbites(Arrays.stream(restants).map(i -> pixels[i]).toArray(),
+                    Arrays.stream(restants).mapToDouble(i -> zRe[i]).toArray(),
+                    Arrays.stream(restants).mapToDouble(i -> zIm[i]).toArray(), new int[0], grille);
+        }
+        BufferedImage result = new BufferedImage(config.getLongueur(), config.getLargeur(), BufferedImage.TYPE_INT_RGB);
+        pool.invoke(new Coloration(annulation, config.getMaxIter(), config.getConvergentColor(), config.getColor(),
+                palette(config), Indices.de(indices), result, 1, 0, 0, 0, config.getLargeur()));
+        image = result;
+        rendu = new Rendu(fractale, config, Indices.compacts(indices, maxIter), suite);
+        affichage.run();
+    }
+
+    /**
+     * Calcule les coordonnées des pixels d'une image telles que les tuiles les calculent
+     * @param config la configuration de l'image
+     * @param re reçoit les parties réelles des colonnes de l'image
+     * @param im reçoit les parties imaginaires des lignes de l'image
+     */
+    private static void coordonneesTuiles(Configuration config, double[] re, double[] im) {
+        double pas = config.getPas();
+        BigDecimal pasExact = BigDecimal.valueOf(pas);
+        BigInteger x0 = config.getMinReExact().divide(pasExact, 0, RoundingMode.FLOOR).toBigInteger();
+        BigInteger y0 = config.getMaxImExact().divide(pasExact, 0, RoundingMode.FLOOR).toBigInteger().negate();
+        BigDecimal phaseRe = config.getMinReExact().subtract(pasExact.multiply(new BigDecimal(x0)));
+        BigDecimal phaseIm = config.getMaxImExact().add(pasExact.multiply(new BigDecimal(y0)));
+        int decalageX = x0.mod(BigInteger.valueOf(TAILLE_TUILE)).intValue();
+        int decalageY = y0.mod(BigInteger.valueOf(TAILLE_TUILE)).intValue();
+        for (int x = 0; x < re.length; x++) {
+            BigInteger bord = x0.add(BigInteger.valueOf(x - (x + decalageX) % TAILLE_TUILE));
+            re[x] = phaseRe.add(pasExact.multiply(new BigDecimal(bord))).doubleValue()
+                    + (pas * ((x + decalageX) % TAILLE_TUILE));
+        }
+        for (int y = 0; y < im.length; y++) {
+            BigInteger bord = y0.add(BigInteger.valueOf(y - (y + decalageY) % TAILLE_TUILE));
+            im[y] = phaseIm.subtract(pasExact.multiply(new BigDecimal(bord))).doubleValue()
+                    - (pas * ((y + decalageY) % TAILLE_TUILE));
         }
     }
 
     /**
-     * Interrompt les calculs des threads en cours
+     * Interrompt les calculs en cours : leurs tâches s'arrêtent à la prochaine ligne ou au
+     * prochain bloc et libèrent les threads du pool
      */
     public void annule(){
-        threads.forEach(f -> {
-            f.shutdownNow();
-        });
-        threads = new ArrayList<>();
+        enCours.forEach(Annulation::annule);
     }
 
     /**
-     * Classe qui calcule l'image d'une fractale
+     * Classe qui calcule l'image par blocs de BLOC pixels de côté, rangés selon la courbe de
+     * Morton pour que les blocs d'une même tâche soient voisins. Le coût de chaque bloc est
+     * estimé par une sonde sur quelques pixels, dont les indices sont gardés, et une tâche est coupée en deux parts de coût
+     * égal tant qu'elle dépasse une fraction du coût total, ce qui donne des tâches plus
+     * nombreuses là où le calcul est long et équilibre le vol de tâches
      */
-    private class Calcul extends RecursiveAction {
+    private static class Calcul extends RecursiveAction {
         /**
-         * la fractale
+         * le côté des blocs de pixels
          */
-        private final Fractale fractale = FractaleImage.this.fractale;
+        private static final int BLOC = 32;
         /**
-         * le pas de discrétisation
+         * l'écart entre deux pixels de la sonde dans un bloc
          */
-        private final double pas = configuration.getPas();
+        private static final int SONDE = 16;
         /**
-         * le maximum d'itération
+         * le nombre de tâches visé par thread
          */
-        private final int maxIter = configuration.getMaxIter();
+        private static final int TACHES_PAR_THREAD = 16;
         /**
-         * la couleur des points convergents
+         * le jeton d'annulation du calcul
          */
-        private final int convergentColor = configuration.getConvergentColor();
+        private final Annulation annulation;
         /**
-         * la couleur des points en fonciton de l'indice de divergence
+         * le noyau qui calcule les indices de divergence
+         */
+        private final Noyau noyau;
+        /**
+         * les indices de divergence de l'image, ligne par ligne
+         */
+        private final int[] indices;
+        /**
+         * la longueur de l'image
+         */
+        private final int longueur;
+        /**
+         * la largeur de l'image
+         */
+        private final int largeur;
+        /**
+         * les blocs dans l'ordre de la courbe de Morton, numérotés ligne par ligne
+         */
+        private final int[] blocs;
+        /**
+         * les coûts estimés cumulés des blocs : couts[i] est le coût des i premiers blocs
+         */
+        private final long[] couts;
+        /**
+         * le coût au-delà duquel une tâche est coupée
+         */
+        private final long seuil;
+        /**
+         * le premier bloc à calculer
+         */
+        private final int from;
+        /**
+         * le bloc qui suit le dernier bloc à calculer
+         */
+        private final int to;
+
+        /**
+         * Construit un Calcul pour une suite de blocs
+         * @param annulation le jeton d'annulation du calcul
+         * @param noyau le noyau de calcul
+         * @param indices les indices de divergence de l'image
+         * @param longueur la longueur de l'image
+         * @param largeur la largeur de l'image
+         * @param blocs les blocs dans l'ordre de la courbe de Morton
+         * @param couts les coûts estimés cumulés des blocs
+         * @param seuil le coût au-delà duquel une tâche est coupée
+         * @param from le premier bloc à calculer
+         * @param to le bloc qui suit le dernier bloc à calculer
+         */
+        private Calcul(Annulation annulation, Noyau noyau, int[] indices, int longueur, int largeur, int[] blocs,
+                long[] couts, long seuil, int from, int to) {
+            this.annulation = annulation;
+            this.noyau = noyau;
+            this.indices = indices;
+            this.longueur = longueur;
+            this.largeur = largeur;
+            this.blocs = blocs;
+            this.couts = couts;
+            this.seuil = seuil;
+            this.from = from;
+            this.to = to;
+        }
+
+        /**
+         * Construit le Calcul de toute l'image : range les blocs selon la courbe de Morton et
+         * estime leur coût en calculant en parallèle quelques pixels de chacun
+         * @param pool le pool qui exécute le calcul
+         * @param annulation le jeton d'annulation du calcul
+         * @param noyau le noyau de calcul
+         * @param indices les indices de divergence de l'image
+         * @param longueur la longueur de l'image
+         * @param largeur la largeur de l'image
+         * @return le Calcul de toute l'image
+         */
+        private static Calcul image(ForkJoinPool pool, Annulation annulation, Noyau noyau, int[] indices, int longueur, int largeur) {
+            int nx = (longueur + BLOC - 1) / BLOC;
+            int ny = (largeur + BLOC - 1) / BLOC;
+            long[] cles = new long[nx * ny];
+            for (int by = 0; by < ny; by++)
+                for (int bx = 0; bx < nx; bx++)
+                    cles[by * nx + bx] = (morton(bx, by) << 32) | (by * nx + bx);
+            Arrays.sort(cles);
+            int[] blocs = Arrays.stream(cles).mapToInt(c -> (int) c).toArray();
+
+            // le nombre d'itérations faites pour les pixels de la sonde, plus un pour le coût fixe
+            // d'un pixel ; leurs indices sont gardés
+            long[] sonde = new long[blocs.length];
+            pool.submit(() -> IntStream.range(0, blocs.length).parallel().forEach(i -> {
+                annulation.verifie();
+                int x0 = (blocs[i] % nx) * BLOC;
+                int y0 = (blocs[i] / nx) * BLOC;
+                long cout = 0;
+                for (int y = y0 + SONDE / 2; y < Math.min(y0 + BLOC, largeur); y += SONDE)
+                    for (int x = x0 + SONDE / 2; x < Math.min(x0 + BLOC, longueur); x += SONDE) {
+                        long s = noyau.sonde(x, y);
+                        indices[y * longueur + x] = (int) s;
+                        cout += (s >>> 32) + 1;
+                    }
+                // les blocs du bord dont la sonde est vide coûtent au moins un pixel
+                sonde[i] = Math.max(cout, 1);
+            })).join();
+            long[] couts = new long[blocs.length + 1];
+            for (int i = 0; i < blocs.length; i++)
+                couts[i + 1] = couts[i] + sonde[i];
+            long seuil = Math.max(1, couts[blocs.length] / ((long) pool.getParallelism() * TACHES_PAR_THREAD));
+            return new Calcul(annulation, noyau, indices, longueur, largeur, blocs, couts, seuil, 0, blocs.length);
+        }
+
+        /**
+         * @param x la colonne du bloc
+         * @param y la ligne du bloc
+         * @return la position du bloc sur la courbe de Morton, en entrelaçant les bits de x et de y
          */
-        private final ColorFunction color = configuration.getColor();
+        private static long morton(int x, int y) {
+            long res = 0;
+            for (int b = 0; b < 16; b++)
+                res |= ((long) ((x >> b) & 1) << (2 * b)) | ((long) ((y >> b) & 1) << (2 * b + 1));
+            return res;
+        }
+
+        /**
+         * Calcule les pixels encore inconnus des blocs de la tâche, ligne par ligne dans chaque bloc
+         */
+        private void run() {
+            int nx = (longueur + BLOC - 1) / BLOC;
+            for (int i = from; i < to; i++) {
+                int x0 = (blocs[i] % nx) * BLOC;
+                int y0 = (blocs[i] / nx) * BLOC;
+                int x1 = Math.min(x0 + BLOC, longueur);
+                annulation.verifie();
+                for (int y = y0; y < Math.min(y0 + BLOC, largeur); y++) {
+                    int x = x0;
+                    while (x < x1) {
+                        while (x < x1 && indices[y * longueur + x] >= 0)
+                            x++;
+                        int premier = x;
+                        while (x < x1 && indices[y * longueur + x] < 0)
+                            x++;
+                        if (premier < x)
+                            noyau.ligne(y, premier, x, indices, y * longueur + premier);
+                    }
+                }
+            }
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from == 1 || couts[to] - couts[from] <= seuil)
+                run();
+            else {
+                // le premier bloc où la moitié du coût de la tâche est atteinte
+                int middle = Arrays.binarySearch(couts, from, to, couts[from] + (couts[to] - couts[from]) / 2);
+                if (middle < 0)
+                    middle = -middle - 1;
+                middle = Math.max(from + 1, Math.min(to - 1, middle));
+                invokeAll(new Calcul(annulation, noyau, indices, longueur, largeur, blocs, couts, seuil, from, middle),
+                        new Calcul(annulation, noyau, indices, longueur, largeur, blocs, couts, seuil, middle, to));
+            }
+        }
+    }
+
+    /**
+     * Classe qui calcule une passe d'un calcul progressif : les pixels dont les coordonnées sont
+     * des multiples de ecart et qui n'ont pas été calculés par la passe précédente (d'écart double)
+     */
+    private static class Passe extends RecursiveAction {
+        /**
+         * le jeton d'annulation du calcul
+         */
+        private final Annulation annulation;
+        /**
+         * le noyau qui calcule les indices de divergence
+         */
+        private final Noyau noyau;
         /**
          * la longueur de l'image
          */
-        private final int longueur = configuration.getLongueur();
+        private final int longueur;
         /**
-         * le minimum de l'intervalle des réels
+         * les indices de divergence de l'image, ligne par ligne
          */
-        private final double minRe = configuration.getMinRe();
+        private final int[] indices;
         /**
-         * le maximum de l'intervalle des imaginaires
+         * l'écart entre deux pixels calculés
          */
-        private final double maxIm = configuration.getMaxIm();
+        private final int ecart;
+        /**
+         * true si aucune passe n'a été calculée avant celle-ci
+         */
+        private final boolean premiere;
+        /**
+         * la première colonne à calculer
+         */
+        private final int fromX;
+        /**
+         * la colonne qui suit la dernière colonne à calculer
+         */
+        private final int toX;
         /**
          * le numéro de la première ligne de l'image à calculer
          */
         private final int fromLigne;
         /**
-         * le nombre de ligne à calculer
+         * le numéro de la ligne qui suit la dernière ligne à calculer
          */
         private final int toLigne;
-        /**
-         * l'image qui doit être calculée
-         */
-        private final BufferedImage result;
 
         /**
-         * Construit un Calcul selon une image et un intervalle de calcul
-         * @param result l'image qui doit être calculée
+         * Construit une Passe selon un tableau d'indices, un écart et un rectangle de l'image
+         * @param annulation le jeton d'annulation du calcul
+         * @param noyau le noyau de calcul
+         * @param indices les indices de divergence de l'image
+         * @param longueur la longueur de l'image
+         * @param ecart l'écart entre deux pixels calculés
+         * @param premiere true si aucune passe n'a été calculée avant celle-ci
+         * @param fromX la première colonne à calculer
+         * @param toX la colonne qui suit la dernière colonne à calculer
          * @param fromLigne la première ligne à calculer
-         * @param toLigne le nombre de ligne à calculer
+         * @param toLigne la ligne qui suit la dernière ligne à calculer
          */
-        private Calcul(BufferedImage result, int fromLigne, int toLigne) {
-            this.result = result;
+        private Passe(Annulation annulation, Noyau noyau, int[] indices, int longueur, int ecart, boolean premiere,
+                int fromX, int toX, int fromLigne, int toLigne) {
+            this.annulation = annulation;
+            this.noyau = noyau;
+            this.indices = indices;
+            this.longueur = longueur;
+            this.ecart = ecart;
+            this.premiere = premiere;
+            this.fromX = fromX;
+            this.toX = toX;
             this.fromLigne = fromLigne;
             this.toLigne = toLigne;
         }
 
         /**
-         * Calcule la portion d'image définie par la première ligne et le nombre de ligne
+         * Calcule les pixels encore inconnus d'une ligne parmi les colonnes
+         * debut, debut + saut, debut + 2 * saut... inférieures à toX
+         * @param y la ligne
+         * @param debut la première colonne candidate
+         * @param saut l'écart entre deux colonnes candidates
          */
-        private void run() {
-            for (int x = 0; x < longueur; x++) {
-                double re = minRe + (pas * x);
+        private void ligne(int y, int debut, int saut) {
+            int x = debut;
+            while (x < toX) {
+                while (x < toX && indices[y * longueur + x] >= 0)
+                    x += saut;
+                int premier = x;
+                while (x < toX && indices[y * longueur + x] < 0)
+                    x += saut;
+                if (premier < x)
+                    noyau.ligne(y, premier, x, saut, indices, y * longueur + premier);
+            }
+        }
+
+        @Override
+        protected void compute() {
+            if (toLigne - fromLigne <= 100) {
+                // la première colonne multiple de ecart
+                int debut = (fromX + ecart - 1) / ecart * ecart;
                 for (int y = fromLigne; y < toLigne; y++) {
-                    double im = maxIm - (pas * y);
-                    int indice = fractale.divergenceIndex(new Complexe(re,im), maxIter);
-                    int c = (indice == maxIter && convergentColor != -1) ? convergentColor : color.getColor(indice, maxIter);
-                    result.setRGB(x, y, c);
+                    if (y % ecart != 0)
+                        continue;
+                    annulation.verifie();
+                    if (premiere || y % (2 * ecart) != 0)
+                        ligne(y, debut, ecart);
+                    else
+                        // les colonnes multiples de 2 * ecart sont connues depuis la passe précédente
+                        ligne(y, debut % (2 * ecart) == 0 ? debut + ecart : debut, 2 * ecart);
                 }
             }
+            else {
+                int middle = (fromLigne + toLigne) / 2;
+                invokeAll(new Passe(annulation, noyau, indices, longueur, ecart, premiere, fromX, toX, fromLigne, middle),
+                        new Passe(annulation, noyau, indices, longueur, ecart, premiere, fromX, toX, middle, toLigne));
+            }
+        }
+    }
+
+    /**
+     * Classe qui calcule les indices de divergence d'un rectangle de l'image par subdivision
+     * (algorithme de Mariani-Silver) : le bord du rectangle est calculé en premier et,
+     * s'il n'a qu'un seul indice, l'intérieur est rempli avec cet indice sans être itéré.
+     * Sinon le rectangle est découpé en quatre rectangles qui partagent leurs bords.
+     * Les indices encore inconnus valent -1
+     */
+    private static class Subdivision extends RecursiveAction {
+        /**
+         * la taille en dessous de laquelle un rectangle est calculé pixel par pixel
+         */
+        private static final int TAILLE_MIN = 8;
+        /**
+         * le jeton d'annulation du calcul
+         */
+        private final Annulation annulation;
+        /**
+         * le noyau qui calcule les indices de divergence
+         */
+        private final Noyau noyau;
+        /**
+         * la longueur de l'image
+         */
+        private final int longueur;
+        /**
+         * les indices de divergence de l'image, ligne par ligne
+         */
+        private final int[] indices;
+        /**
+         * la première colonne du rectangle
+         */
+        private final int x0;
+        /**
+         * la première ligne du rectangle
+         */
+        private final int y0;
+        /**
+         * la colonne qui suit la dernière colonne du rectangle
+         */
+        private final int x1;
+        /**
+         * la ligne qui suit la dernière ligne du rectangle
+         */
+        private final int y1;
+
+        /**
+         * Construit une Subdivision pour un rectangle de l'image
+         * @param annulation le jeton d'annulation du calcul
+         * @param noyau le noyau de calcul
+         * @param indices les indices de divergence de l'image
+         * @param longueur la longueur de l'image
+         * @param x0 la première colonne du rectangle
+         * @param y0 la première ligne du rectangle
+         * @param x1 la colonne qui suit la dernière colonne du rectangle
+         * @param y1 la ligne qui suit la dernière ligne du rectangle
+         */
+        private Subdivision(Annulation annulation, Noyau noyau, int[] indices, int longueur, int x0, int y0,
+                int x1, int y1) {
+            this.annulation = annulation;
+            this.noyau = noyau;
+            this.indices = indices;
+            this.longueur = longueur;
+            this.x0 = x0;
+            this.y0 = y0;
+            this.x1 = x1;
+            this.y1 = y1;
+        }
+
+        /**
+         * @param x la colonne du pixel
+         * @param y la ligne du pixel
+         * @return l'indice du pixel (x, y), calculé s'il est encore inconnu
+         */
+        private int indice(int x, int y) {
+            int i = y * longueur + x;
+            if (indices[i] < 0)
+                indices[i] = noyau.indice(x, y);
+            return indices[i];
         }
 
         @Override
         protected void compute() {
-            if (toLigne - fromLigne <= 100)
-                run();
-            else{
+            annulation.verifie();
+            if (x1 - x0 <= TAILLE_MIN || y1 - y0 <= TAILLE_MIN) {
+                // seules les suites de pixels encore inconnus sont calculées
+                for (int y = y0; y < y1; y++) {
+                    int x = x0;
+                    while (x < x1) {
+                        while (x < x1 && indices[y * longueur + x] >= 0)
+                            x++;
+                        int debut = x;
+                        while (x < x1 && indices[y * longueur + x] < 0)
+                            x++;
+                        if (debut < x)
+                            noyau.ligne(y, debut, x, indices, y * longueur + debut);
+                    }
+                }
+                return;
+            }
+            int ref = indice(x0, y0);
+            boolean uniforme = true;
+            for (int x = x0; x < x1; x++) {
+                uniforme &= indice(x, y0) == ref;
+                uniforme &= indice(x, y1 - 1) == ref;
+            }
+            for (int y = y0; y < y1; y++) {
+                uniforme &= indice(x0, y) == ref;
+                uniforme &= indice(x1 - 1, y) == ref;
+            }
+            if (uniforme) {
+                for (int y = y0 + 1; y < y1 - 1; y++)
+                    Arrays.fill(indices, y * longueur + x0 + 1, y * longueur + x1 - 1, ref);
+                return;
+            }
+            int mx = (x0 + x1) / 2;
+            int my = (y0 + y1) / 2;
+            invokeAll(new Subdivision(annulation, noyau, indices, longueur, x0, y0, mx + 1, my + 1),
+                    new Subdivision(annulation, noyau, indices, longueur, mx, y0, x1, my + 1),
+                    new Subdivision(annulation, noyau, indices, longueur, x0, my, mx + 1, y1),
+                    new Subdivision(annulation, noyau, indices, longueur, mx, my, x1, y1));
+        }
+    }
+
+    /**
+     * Classe qui reprend l'itération d'une liste de pixels depuis l'état de leur orbite
+     */
+    private class Reprise extends RecursiveAction {
+        /**
+         * le jeton d'annulation du calcul
+         */
+        private final Annulation annulation;
+        /**
+         * la configuration de l'image
+         */
+        private final Configuration config;
+        /**
+         * les parties réelles des colonnes de l'image
+         */
+        private final double[] re;
+        /**
+         * les parties imaginaires des lignes de l'image
+         */
+        private final double[] im;
+        /**
+         * les indices de divergence de l'image, ligne par ligne
+         */
+        private final int[] indices;
+        /**
+         * les positions des pixels à reprendre dans l'image
+         */
+        private final int[] positions;
+        /**
+         * les parties réelles des derniers points des orbites, mises à jour
+         */
+        private final double[] zRe;
+        /**
+         * les parties imaginaires des derniers points des orbites, mises à jour
+         */
+        private final double[] zIm;
+        /**
+         * le nombre d'itérations déjà faites, 0 pour itérer depuis le début
+         */
+        private final int debut;
+        /**
+         * le premier pixel de la liste à reprendre
+         */
+        private final int from;
+        /**
+         * le pixel qui suit le dernier pixel de la liste à reprendre
+         */
+        private final int to;
+
+        /**
+         * Construit une Reprise pour une partie d'une liste de pixels
+         * @param annulation le jeton d'annulation du calcul
+         * @param config la configuration de l'image
+         * @param re les parties réelles des colonnes de l'image
+         * @param im les parties imaginaires des lignes de l'image
+         * @param indices les indices de divergence de l'image
+         * @param positions les positions des pixels à reprendre dans l'image
+         * @param zRe les parties réelles des derniers points des orbites
+         * @param zIm les parties imaginaires des derniers points des orbites
+         * @param debut le nombre d'itérations déjà faites
+         * @param from le premier pixel de la liste à reprendre
+         * @param to le pixel qui suit le dernier pixel de la liste à reprendre
+         */
+        private Reprise(Annulation annulation, Configuration config, double[] re, double[] im, int[] indices, int[] positions,
+                double[] zRe, double[] zIm, int debut, int from, int to) {
+            this.annulation = annulation;
+            this.config = config;
+            this.re = re;
+            this.im = im;
+            this.indices = indices;
+            this.positions = positions;
+            this.zRe = zRe;
+            this.zIm = zIm;
+            this.debut = debut;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from <= 4096) {
+                int longueur = config.getLongueur();
+                double tolerance = config.isPeriodicite() ? config.getTolerance() : -1;
+                double[] z = new double[2];
+                for (int i = from; i < to; i++) {
+                    annulation.verifie();
+                    int x = positions[i] % longueur;
+                    int y = positions[i] / longueur;
+                    z[0] = zRe[i];
+                    z[1] = zIm[i];
+                    indices[positions[i]] = fractale.reprise(re[x], im[y], z,
+                            debut, config.getMaxIter(), tolerance);
+                    zRe[i] = z[0];
+                    zIm[i] = z[1];
+                }
+            }
+            else {
+                int middle = (from + to) / 2;
+                invokeAll(new Reprise(annulation, config, re, im, indices, positions, zRe, zIm, debut, from, middle),
+                        new Reprise(annulation, config, re, im, indices, positions, zRe, zIm, debut, middle, to));
+            }
+        }
+    }
+
+    /**
+     * Tuile qui n'est pas dans le cache et doit être calculée
+     */
+    private static class Tuile {
+        /**
+         * la clé de la tuile dans le cache
+         */
+        private final CacheTuiles.Cle cle;
+        /**
+         * le noyau qui calcule les indices de la tuile
+         */
+        private final Noyau noyau;
+        /**
+         * les indices de divergence de la tuile, ligne par ligne, -1 pour les pixels inconnus
+         */
+        private final int[] indices;
+        /**
+         * la première colonne de la tuile visible dans l'image
+         */
+        private final int x0;
+        /**
+         * la première ligne de la tuile visible dans l'image
+         */
+        private final int y0;
+        /**
+         * la colonne qui suit la dernière colonne de la tuile visible dans l'image
+         */
+        private final int x1;
+        /**
+         * la ligne qui suit la dernière ligne de la tuile visible dans l'image
+         */
+        private final int y1;
+
+        /**
+         * Construit une tuile à calculer
+         * @param cle la clé de la tuile dans le cache
+         * @param noyau le noyau qui calcule les indices de la tuile
+         * @param indices les indices de divergence de la tuile
+         * @param x0 la première colonne de la tuile visible dans l'image
+         * @param y0 la première ligne de la tuile visible dans l'image
+         * @param x1 la colonne qui suit la dernière colonne de la tuile visible dans l'image
+         * @param y1 la ligne qui suit la dernière ligne de la tuile visible dans l'image
+         */
+        private Tuile(CacheTuiles.Cle cle, Noyau noyau, int[] indices, int x0, int y0, int x1, int y1) {
+            this.cle = cle;
+            this.noyau = noyau;
+            this.indices = indices;
+            this.x0 = x0;
+            this.y0 = y0;
+            this.x1 = x1;
+            this.y1 = y1;
+        }
+
+        /**
+         * @return true si tous les pixels de la tuile sont connus
+         */
+        private boolean complete() {
+            for (int i : indices)
+                if (i < 0)
+                    return false;
+            return true;
+        }
+    }
+
+    /**
+     * Classe qui calcule la même passe de la partie visible de plusieurs tuiles en parallèle
+     */
+    private class PasseTuiles extends RecursiveAction {
+        /**
+         * le jeton d'annulation du calcul
+         */
+        private final Annulation annulation;
+        /**
+         * les tuiles à calculer
+         */
+        private final List<Tuile> tuiles;
+        /**
+         * l'écart entre deux pixels calculés
+         */
+        private final int ecart;
+        /**
+         * true si aucune passe n'a été calculée avant celle-ci
+         */
+        private final boolean premiere;
+        /**
+         * true si la dernière passe est calculée par subdivision, selon la configuration au
+         * début du calcul
+         */
+        private final boolean subdivision;
+
+        /**
+         * Construit une PasseTuiles selon une liste de tuiles et un écart
+         * @param annulation le jeton d'annulation du calcul
+         * @param tuiles les tuiles à calculer
+         * @param ecart l'écart entre deux pixels calculés, 1 pour la dernière passe
+         * @param premiere true si aucune passe n'a été calculée avant celle-ci
+         * @param subdivision true si la dernière passe est calculée par subdivision
+         */
+        private PasseTuiles(Annulation annulation, List<Tuile> tuiles, int ecart, boolean premiere,
+                boolean subdivision) {
+            this.annulation = annulation;
+            this.tuiles = tuiles;
+            this.ecart = ecart;
+            this.premiere = premiere;
+            this.subdivision = subdivision;
+        }
+
+        @Override
+        protected void compute() {
+            List<RecursiveAction> passes = new ArrayList<>();
+            for (Tuile t : tuiles) {
+                if (ecart == 1 && subdivision)
+                    passes.add(new Subdivision(annulation, t.noyau, t.indices, TAILLE_TUILE, t.x0, t.y0, t.x1, t.y1));
+                else
+                    passes.add(new Passe(annulation, t.noyau, t.indices, TAILLE_TUILE, ecart, premiere, t.x0, t.x1, t.y0, t.y1));
+            }
+            invokeAll(passes);
+        }
+    }
+
+    /**
+     * Classe qui colorie les pixels d'une image selon leurs indices de divergence, en écrivant
+     * directement dans le tableau de l'image de type TYPE_INT_RGB ; chaque tâche écrit des lignes
+     * contiguës
+     */
+    private class Coloration extends RecursiveAction {
+        /**
+         * le jeton d'annulation du calcul
+         */
+        private final Annulation annulation;
+        /**
+         * le maximum d'itération
+         */
+        private final int maxIter;
+        /**
+         * la couleur des points convergents
+         */
+        private final int convergentColor;
+        /**
+         * la couleur des points en fonciton de l'indice de divergence
+         */
+        private final ColorFunction color;
+        /**
+         * la table des couleurs des indices de divergence, null pour appliquer la fonction à chaque pixel
+         */
+        private final int[] palette;
+        /**
+         * la longueur de l'image
+         */
+        private final int longueur;
+        /**
+         * les indices de divergence de l'image, ligne par ligne
+         */
+        private final Indices indices;
+        /**
+         * l'image qui doit être coloriée
+         */
+        private final BufferedImage result;
+        /**
+         * l'écart entre deux pixels calculés : chaque pixel prend la couleur du pixel calculé
+         * en haut à gauche du carré de côté ecart qui le contient
+         */
+        private final int ecart;
+        /**
+         * la colonne du pixel (0, 0) dans la grille des pixels calculés, modulo ecart
+         */
+        private final int decalageX;
+        /**
+         * la ligne du pixel (0, 0) dans la grille des pixels calculés, modulo ecart
+         */
+        private final int decalageY;
+        /**
+         * le numéro de la première ligne à colorier
+         */
+        private final int fromLigne;
+        /**
+         * le numéro de la ligne qui suit la dernière ligne à colorier
+         */
+        private final int toLigne;
+
+        /**
+         * Construit une Coloration selon un tableau d'indices et un intervalle de lignes
+         * @param annulation le jeton d'annulation du calcul
+         * @param maxIter le maximum d'itération
+         * @param convergentColor la couleur des points convergents
+         * @param color la couleur des points en fonction de l'indice de divergence
+         * @param palette la table des couleurs des indices de divergence, ou null
+         * @param indices les indices de divergence de l'image
+         * @param result l'image qui doit être coloriée
+         * @param ecart l'écart entre deux pixels calculés
+         * @param decalageX la colonne du pixel (0, 0) dans la grille des pixels calculés
+         * @param decalageY la ligne du pixel (0, 0) dans la grille des pixels calculés
+         * @param fromLigne la première ligne à colorier
+         * @param toLigne la ligne qui suit la dernière ligne à colorier
+         */
+        private Coloration(Annulation annulation, int maxIter, int convergentColor, ColorFunction color, int[] palette,
+                Indices indices, BufferedImage result, int ecart, int decalageX, int decalageY, int fromLigne, int toLigne) {
+            this.annulation = annulation;
+            this.maxIter = maxIter;
+            this.convergentColor = convergentColor;
+            this.color = color;
+            this.palette = palette;
+            this.indices = indices;
+            this.result = result;
+            this.longueur = result.getWidth();
+            this.ecart = ecart;
+            this.decalageX = decalageX % ecart;
+            this.decalageY = decalageY % ecart;
+            this.fromLigne = fromLigne;
+            this.toLigne = toLigne;
+        }
+
+        @Override
+        protected void compute() {
+            if (toLigne - fromLigne <= 100) {
+                annulation.verifie();
+                // les pixels de l'image, ligne par ligne, écrits sans passer par son modèle de couleurs
+                int[] pixels = ((DataBufferInt) result.getRaster().getDataBuffer()).getData();
+                for (int y = fromLigne; y < toLigne; y++) {
+                    int ys = y - (y + decalageY) % ecart;
+                    if (ys < 0)
+                        ys += ecart;
+                    if (ys >= result.getHeight())
+                        continue;
+                    for (int x = 0; x < longueur; x++) {
+                        int xs = x - (x + decalageX) % ecart;
+                        if (xs < 0)
+                            xs += ecart;
+                        if (xs >= longueur)
+                            continue;
+                        int indice = indices.get(ys * longueur + xs);
+                        int c;
+                        if (palette != null)
+                            c = palette[indice];
+                        else
+                            c = (indice == maxIter && convergentColor != -1) ? convergentColor : color.getColor(indice, maxIter);
+                        pixels[y * longueur + x] = c;
+                    }
+                }
+            }
+            else {
                 int middle = (fromLigne + toLigne) / 2;
-                invokeAll(new Calcul(result, fromLigne, middle), new Calcul(result, middle, toLigne));
+                invokeAll(new Coloration(annulation, maxIter, convergentColor, color, palette, indices, result, ecart,
+                                decalageX, decalageY, fromLigne, middle),
+                        new Coloration(annulation, maxIter, convergentColor, color, palette, indices, result, ecart,
+                                decalageX, decalageY, middle, toLigne));
             }
         }
     }
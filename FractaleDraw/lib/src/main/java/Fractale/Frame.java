@@ -522,6 +522,14 @@ public final class Frame extends javax.swing.JFrame {
 
         outilsPanel.add(zoomPanel, new java.awt.GridBagConstraints());
 
+        subdivision.setText("Subdivision");
+        subdivision.setToolTipText("Remplit sans les calculer les rectangles dont le bord est uniforme (Mariani-Silver)");
+        outilsPanel.add(subdivision, new java.awt.GridBagConstraints());
+
+        reprise.setText("Reprise");
+        reprise.setToolTipText("Garde l'état des orbites pour reprendre l'itération quand le nombre d'itérations augmente");
+        outilsPanel.add(reprise, new java.awt.GridBagConstraints());
+
         buttonPanel.setLayout(new java.awt.GridBagLayout());
 
         afficher.setText("Afficher");
@@ -651,10 +659,10 @@ public final class Frame extends javax.swing.JFrame {
         Configuration config = fImage.getConfiguration();
         maxIter.setValue(config.getMaxIter());
         pas.setText(config.getPas()+"");
-        minRe.setText(config.getMinRe()+"");
-        maxRe.setText(config.getMaxRe()+"");
-        minIm.setText(config.getMinIm()+"");
-        maxIm.setText(config.getMaxIm()+"");
+        minRe.setText(config.getMinReExact().toString());
+        maxRe.setText(config.getMaxReExact().toString());
+        minIm.setText(config.getMinImExact().toString());
+        maxIm.setText(config.getMaxImExact().toString());
         longueur.setValue(config.getLongueur());
         largeur.setValue(config.getLargeur());
         if (config.getConvergentColor() != -1){
@@ -689,6 +697,8 @@ public final class Frame extends javax.swing.JFrame {
         }
         deplace.setValue(1);
         zoom.setText("1");
+        subdivision.setSelected(config.isSubdivision());
+        reprise.setSelected(config.isReprise());
     }
 
     /**
@@ -798,6 +808,14 @@ public final class Frame extends javax.swing.JFrame {
         annuler.addActionListener(evt -> {
             controleur.annule();
         });
+
+        subdivision.addActionListener(evt -> {
+            controleur.setSubdivision(subdivision.isSelected());
+        });
+
+        reprise.addActionListener(evt -> {
+            controleur.setReprise(reprise.isSelected());
+        });
         
     }
 
@@ -837,28 +855,28 @@ public final class Frame extends javax.swing.JFrame {
      * Met à jour le texte du composant minRe
      */
     public void updateMinRe(){
-        this.minRe.setText(fImage.getConfiguration().getMinRe()+"");
+        this.minRe.setText(fImage.getConfiguration().getMinReExact().toString());
     }
 
     /**
      * Met à jour le texte du composant maxRe
      */
     public void updateMaxRe(){
-        this.maxRe.setText(fImage.getConfiguration().getMaxRe()+"");
+        this.maxRe.setText(fImage.getConfiguration().getMaxReExact().toString());
     }
 
     /**
      * Met à jour le texte du composant minIm
      */
     public void updateMinIm(){
-        this.minIm.setText(fImage.getConfiguration().getMinIm()+"");
+        this.minIm.setText(fImage.getConfiguration().getMinImExact().toString());
     }
 
     /**
      * Met à jour le texte du composant maxIm
      */
     public void updateMaxIm(){
-        this.maxIm.setText(fImage.getConfiguration().getMaxIm()+"");
+        this.maxIm.setText(fImage.getConfiguration().getMaxImExact().toString());
     }
 
     /**
@@ -907,7 +925,9 @@ public final class Frame extends javax.swing.JFrame {
     private final javax.swing.JSpinner rgbB = new javax.swing.JSpinner();
     private final javax.swing.JSpinner rgbG = new javax.swing.JSpinner();
     private final javax.swing.JSpinner rgbR = new javax.swing.JSpinner();
+    private final javax.swing.JCheckBox reprise = new javax.swing.JCheckBox();
     private final javax.swing.JButton sauvegarder = new javax.swing.JButton();
+    private final javax.swing.JCheckBox subdivision = new javax.swing.JCheckBox();
     private final javax.swing.JTextField zoom = new javax.swing.JTextField();
     // End of variables declaration//GEN-END:variables
 }
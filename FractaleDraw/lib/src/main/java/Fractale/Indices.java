@@ -0,0 +1,259 @@
+package Fractale;
+
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+
+/**
+ * Indices de divergence des pixels d'une image ou d'une tuile terminée, rangés ligne par ligne
+ * dans le plus petit tableau qui peut les contenir
+ */
+abstract class Indices {
+    /**
+     * le plus grand indice rangé dans un short (lu sans signe)
+     */
+    private static final int MAX_COURT = 0xFFFF;
+
+    /**
+     * @param i la position d'un pixel
+     * @return l'indice de divergence du pixel
+     */
+    abstract int get(int i);
+
+    /**
+     * @return la mémoire occupée par les indices, en octets
+     */
+    abstract long memoire();
+
+    /**
+     * Copie des indices consécutifs dans un tableau d'entiers
+     * @param from la position du premier indice à copier
+     * @param destination le tableau qui reçoit les indices
+     * @param position la position du premier indice dans destination
+     * @param n le nombre d'indices à copier
+     */
+    abstract void copie(int from, int[] destination, int position, int n);
+
+    /**
+     * @param from la position du premier indice
+     * @return les indices à partir de from, lus directement dans ces indices
+     */
+    Indices sous(long from) {
+        return new Vue(this, Math.toIntExact(from));
+    }
+
+    /**
+     * @param maxIter le nombre maximum d'itération, borne des indices
+     * @return le nombre d'octets d'un indice dans le plus petit type qui peut le contenir
+     */
+    static int octets(int maxIter) {
+        return maxIter <= MAX_COURT ? 2 : 4;
+    }
+
+    /**
+     * @param valeurs des indices de divergence positifs, qui sont copiés
+     * @param maxIter le nombre maximum d'itération, borne des indices
+     * @return les indices rangés dans des short si maxIter le permet, dans des int sinon
+     */
+    static Indices compacts(int[] valeurs, int maxIter) {
+        if (maxIter <= MAX_COURT)
+            return new Courts(valeurs);
+        return new Entiers(valeurs.clone());
+    }
+
+    /**
+     * @param valeurs des indices de divergence, qui ne sont pas copiés
+     * @return les indices lus directement dans valeurs
+     */
+    static Indices de(int[] valeurs) {
+        return new Entiers(valeurs);
+    }
+
+    /**
+     * Projette en mémoire des indices rangés dans un fichier, en petit-boutiste : les pages du
+     * fichier ne sont lues qu'au premier accès à leurs indices, et jamais copiées dans le tas
+     * @param canal le fichier, qui peut être fermé ensuite
+     * @param position la position du premier indice dans le fichier, en octets
+     * @param n le nombre d'indices
+     * @param octets le nombre d'octets d'un indice, 2 (short lus sans signe) ou 4 (int)
+     * @return les indices lus dans le fichier
+     * @throws IOException si le fichier ne peut pas être projeté
+     */
+    static Indices projetes(FileChannel canal, long position, long n, int octets) throws IOException {
+        ByteBuffer[] segments = new ByteBuffer[(int) ((n + Projetes.SEGMENT - 1) / Projetes.SEGMENT)];
+        for (int k = 0; k < segments.length; k++) {
+            long debut = (long) k * Projetes.SEGMENT;
+            long taille = Math.min(Projetes.SEGMENT, n - debut) * octets;
+            segments[k] = canal.map(FileChannel.MapMode.READ_ONLY, position + debut * octets, taille)
+                    .order(ByteOrder.LITTLE_ENDIAN);
+        }
+        return new Projetes(segments, octets, 0);
+    }
+
+    /**
+     * Indices rangés dans des short lus sans signe
+     */
+    private static final class Courts extends Indices {
+        /**
+         * les indices
+         */
+        private final short[] valeurs;
+
+        /**
+         * @param valeurs des indices inférieurs ou égaux à MAX_COURT
+         */
+        private Courts(int[] valeurs) {
+            this.valeurs = new short[valeurs.length];
+            for (int i = 0; i < valeurs.length; i++)
+                this.valeurs[i] = (short) valeurs[i];
+        }
+
+        @Override
+        int get(int i) {
+            return valeurs[i] & MAX_COURT;
+        }
+
+        @Override
+        long memoire() {
+            return 2L * valeurs.length;
+        }
+
+        @Override
+        void copie(int from, int[] destination, int position, int n) {
+            for (int i = 0; i < n; i++)
+                destination[position + i] = valeurs[from + i] & MAX_COURT;
+        }
+    }
+
+    /**
+     * Indices d'un intervalle d'autres indices, qui ne sont pas copiés
+     */
+    private static final class Vue extends Indices {
+        /**
+         * les indices dont l'intervalle est extrait
+         */
+        private final Indices indices;
+        /**
+         * la position du premier indice dans indices
+         */
+        private final int from;
+
+        /**
+         * @param indices les indices dont l'intervalle est extrait
+         * @param from la position du premier indice dans indices
+         */
+        private Vue(Indices indices, int from) {
+            this.indices = indices;
+            this.from = from;
+        }
+
+        @Override
+        int get(int i) {
+            return indices.get(from + i);
+        }
+
+        @Override
+        long memoire() {
+            // la mémoire est celle des indices dont l'intervalle est extrait
+            return 0;
+        }
+
+        @Override
+        void copie(int from, int[] destination, int position, int n) {
+            indices.copie(this.from + from, destination, position, n);
+        }
+    }
+
+    /**
+     * Indices lus dans des segments d'un fichier projeté en mémoire
+     */
+    private static final class Projetes extends Indices {
+        /**
+         * le nombre d'indices d'un segment, une puissance de 2 pour que chaque segment
+         * tienne dans une projection de moins de 2 Gio
+         */
+        private static final long SEGMENT = 1L << 28;
+        /**
+         * les segments du fichier
+         */
+        private final ByteBuffer[] segments;
+        /**
+         * le nombre d'octets d'un indice
+         */
+        private final int octets;
+        /**
+         * la position du premier indice dans les segments
+         */
+        private final long from;
+
+        /**
+         * @param segments les segments du fichier
+         * @param octets le nombre d'octets d'un indice
+         * @param from la position du premier indice dans les segments
+         */
+        private Projetes(ByteBuffer[] segments, int octets, long from) {
+            this.segments = segments;
+            this.octets = octets;
+            this.from = from;
+        }
+
+        @Override
+        int get(int i) {
+            long j = from + i;
+            ByteBuffer segment = segments[(int) (j / SEGMENT)];
+            int position = (int) (j % SEGMENT) * octets;
+            return octets == 2 ? segment.getShort(position) & MAX_COURT : segment.getInt(position);
+        }
+
+        @Override
+        long memoire() {
+            // les indices sont hors du tas
+            return 0;
+        }
+
+        @Override
+        void copie(int from, int[] destination, int position, int n) {
+            for (int i = 0; i < n; i++)
+                destination[position + i] = get(from + i);
+        }
+
+        @Override
+        Indices sous(long from) {
+            return new Projetes(segments, octets, this.from + from);
+        }
+    }
+
+    /**
+     * Indices rangés dans des int
+     */
+    private static final class Entiers extends Indices {
+        /**
+         * les indices
+         */
+        private final int[] valeurs;
+
+        /**
+         * @param valeurs les indices
+         */
+        private Entiers(int[] valeurs) {
+            this.valeurs = valeurs;
+        }
+
+        @Override
+        int get(int i) {
+            return valeurs[i];
+        }
+
+        @Override
+        long memoire() {
+            return 4L * valeurs.length;
+        }
+
+        @Override
+        void copie(int from, int[] destination, int position, int n) {
+            System.arraycopy(valeurs, from, destination, position, n);
+        }
+    }
+}
@@ -1,7 +1,7 @@
 package Fractale;
 
 
-import java.util.function.Function;
+import java.util.Arrays;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
@@ -12,9 +12,17 @@ import org.apache.commons.math3.complex.ComplexFormat;
  */
 public final class Julia extends Fractale {
     /**
-     * la fonction associée à la fractale
+     * les parties réelles des coefficients du polynôme, indexées par degré
      */
-    private Function<Complexe,Complexe> f;
+    private final double[] coefRe;
+    /**
+     * les parties imaginaires des coefficients du polynôme, indexées par degré
+     */
+    private final double[] coefIm;
+    /**
+     * true si la fonction est de la forme (c)z^0+(1)z^2
+     */
+    private final boolean quadratique;
     /**
      * la fonction en chaine de caractère
      */
@@ -28,15 +36,22 @@ public final class Julia extends Fractale {
         if (fonction == null)
             throw new IllegalArgumentException();
         this.fonction = fonction.replaceAll("\\s", "");
-        f = parseFonction();
+        double[][] coef = parseFonction();
+        int degre = coef[0].length - 1;
+        while (degre > 0 && coef[0][degre] == 0 && coef[1][degre] == 0)
+            degre--;
+        coefRe = Arrays.copyOf(coef[0], degre + 1);
+        coefIm = Arrays.copyOf(coef[1], degre + 1);
+        quadratique = degre == 2 && coefRe[2] == 1 && coefIm[2] == 0 && coefRe[1] == 0 && coefIm[1] == 0;
     }
 
     /**
-     * @return une Function représentant la fonction
+     * @return les coefficients du polynôme indexés par degré, parties réelles puis imaginaires
      * @exception IllegalArgumentException si le format de la fonction n'est pas valide
      */
-    private Function<Complexe,Complexe> parseFonction(){
-        Function<Complexe,Complexe> f = z -> Complexe.ZERO;
+    private double[][] parseFonction(){
+        double[] re = new double[1];
+        double[] im = new double[1];
         String s = "+" + fonction.replaceAll("\\.", ",");
         ComplexFormat format = new ComplexFormat();
         Matcher m = Pattern.compile("(\\(([0-9.+-i]*)\\)z\\^([0-9]*))?").matcher(s);
@@ -46,8 +61,12 @@ public final class Julia extends Fractale {
                 if (m.find(i) && m.start() == i) {
                     Complexe c = new Complexe(format.parse(m.group(2)));
                     int p = Integer.parseInt(m.group(3));
-                    Function<Complexe,Complexe> g = f;
-                    f = z -> g.apply(z).plus(c.fois(z.puissance(p)));
+                    if (p >= re.length) {
+                        re = Arrays.copyOf(re, p + 1);
+                        im = Arrays.copyOf(im, p + 1);
+                    }
+                    re[p] += c.re;
+                    im[p] += c.im;
                     i = m.end();
                 }
                 else break;
@@ -56,7 +75,28 @@ public final class Julia extends Fractale {
         }
         if (i != s.length())
             throw new IllegalArgumentException(fonction + " n'est pas reconnu comme une fonction");
-        return f;
+        return new double[][] {re, im};
+    }
+
+    /**
+     * @return true si la fonction est de la forme (c)z^0+(1)z^2
+     */
+    boolean isQuadratique() {
+        return quadratique;
+    }
+
+    /**
+     * @return une copie des parties réelles des coefficients, indexées par degré
+     */
+    double[] getCoefRe() {
+        return coefRe.clone();
+    }
+
+    /**
+     * @return une copie des parties imaginaires des coefficients, indexées par degré
+     */
+    double[] getCoefIm() {
+        return coefIm.clone();
     }
 
     /**
@@ -67,16 +107,165 @@ public final class Julia extends Fractale {
     }
 
     @Override
-    public int divergenceIndex(Complexe z0, int maxIter){
+    public int divergenceIndex(double re, double im, int maxIter){
+        if (quadratique)
+            return divergenceIndexQuadratique(re, im, maxIter);
         int ite = 0;
-        Complexe zn = z0;
-        while (ite < maxIter && zn.module() <= 2) {
-            zn = f.apply(zn);
+        int degre = coefRe.length - 1;
+        double zRe = re;
+        double zIm = im;
+        while (ite < maxIter && zRe * zRe + zIm * zIm <= BORNE) {
+            // schéma de Horner : ((a_n z + a_n-1) z + ...) z + a_0
+            double wRe = coefRe[degre];
+            double wIm = coefIm[degre];
+            for (int k = degre - 1; k >= 0; k--) {
+                double t = wRe * zRe - wIm * zIm + coefRe[k];
+                wIm = wRe * zIm + wIm * zRe + coefIm[k];
+                wRe = t;
+            }
+            zRe = wRe;
+            zIm = wIm;
             ite ++;
         }
         return ite;
     }
 
+    @Override
+    public int divergenceIndex(double re, double im, int maxIter, double tolerance){
+        int n = iterations(re, im, maxIter, tolerance);
+        return n < 0 ? maxIter : n;
+    }
+
+    @Override
+    int iterations(double re, double im, int maxIter, double tolerance){
+        int ite = 0;
+        int degre = coefRe.length - 1;
+        double zRe = re;
+        double zIm = im;
+        double sRe = re;
+        double sIm = im;
+        int periode = 0;
+        int limite = 1;
+        while (ite < maxIter && zRe * zRe + zIm * zIm <= BORNE) {
+            if (quadratique) {
+                double t = zRe * zIm;
+                zRe = coefRe[0] + (zRe * zRe - zIm * zIm);
+                zIm = coefIm[0] + (t + t);
+            }
+            else {
+                double wRe = coefRe[degre];
+                double wIm = coefIm[degre];
+                for (int k = degre - 1; k >= 0; k--) {
+                    double t = wRe * zRe - wIm * zIm + coefRe[k];
+                    wIm = wRe * zIm + wIm * zRe + coefIm[k];
+                    wRe = t;
+                }
+                zRe = wRe;
+                zIm = wIm;
+            }
+            ite ++;
+            if (Math.abs(zRe - sRe) <= tolerance && Math.abs(zIm - sIm) <= tolerance && zRe * zRe + zIm * zIm <= BORNE)
+                return -1 - ite;
+            if (++periode == limite) {
+                sRe = zRe;
+                sIm = zIm;
+                periode = 0;
+                limite <<= 1;
+            }
+        }
+        return ite;
+    }
+
+    @Override
+    int reprise(double re, double im, double[] z, int ite, int maxIter, double tolerance){
+        boolean periodicite = tolerance >= 0;
+        int degre = coefRe.length - 1;
+        double zRe = ite == 0 ? re : z[0];
+        double zIm = ite == 0 ? im : z[1];
+        double sRe = zRe;
+        double sIm = zIm;
+        int periode = 0;
+        int limite = 1;
+        while (ite < maxIter && zRe * zRe + zIm * zIm <= BORNE) {
+            if (quadratique) {
+                double t = zRe * zIm;
+                zRe = coefRe[0] + (zRe * zRe - zIm * zIm);
+                zIm = coefIm[0] + (t + t);
+            }
+            else {
+                double wRe = coefRe[degre];
+                double wIm = coefIm[degre];
+                for (int k = degre - 1; k >= 0; k--) {
+                    double t = wRe * zRe - wIm * zIm + coefRe[k];
+                    wIm = wRe * zIm + wIm * zRe + coefIm[k];
+                    wRe = t;
+                }
+                zRe = wRe;
+                zIm = wIm;
+            }
+            ite ++;
+            if (periodicite) {
+                if (Math.abs(zRe - sRe) <= tolerance && Math.abs(zIm - sIm) <= tolerance
+                        && zRe * zRe + zIm * zIm <= BORNE)
+                    break;
+                if (++periode == limite) {
+                    sRe = zRe;
+                    sIm = zIm;
+                    periode = 0;
+                    limite <<= 1;
+                }
+            }
+        }
+        if (ite < maxIter && zRe * zRe + zIm * zIm <= BORNE) {
+            // orbite périodique : le point ne divergera pas
+            z[0] = Double.NaN;
+            z[1] = Double.NaN;
+            return maxIter;
+        }
+        z[0] = zRe;
+        z[1] = zIm;
+        return ite;
+    }
+
+    /**
+     * Calcule l'indice de divergence pour une fonction de la forme z^2 + c
+     * @param re la partie réelle du point de départ
+     * @param im la partie imaginaire du point de départ
+     * @param maxIter le nombre maximum d'itération pour le calcul
+     * @return l'indicence de divergence au point (re, im)
+     */
+    private int divergenceIndexQuadratique(double re, double im, int maxIter){
+        int ite = 0;
+        double cRe = coefRe[0];
+        double cIm = coefIm[0];
+        double zRe = re;
+        double zIm = im;
+        while (ite < maxIter && zRe * zRe + zIm * zIm <= BORNE) {
+            double t = zRe * zIm;
+            zRe = cRe + (zRe * zRe - zIm * zIm);
+            zIm = cIm + (t + t);
+            ite ++;
+        }
+        return ite;
+    }
+
+    /**
+     * @param o un objet
+     * @return true si o est un ensemble de Julia de même polynôme
+     */
+    @Override
+    public boolean equals(Object o){
+        if (!(o instanceof Julia))
+            return false;
+        Julia j = (Julia) o;
+        return Arrays.equals(coefRe, j.coefRe) && Arrays.equals(coefIm, j.coefIm);
+    }
+
+    @Override
+    public int hashCode(){
+        return 31 * Arrays.hashCode(coefRe) + Arrays.hashCode(coefIm);
+    }
+
     @Override
     public Julia copy(){
         return new Julia(fonction);
@@ -0,0 +1,132 @@
+package Fractale;
+
+
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.apache.commons.cli.CommandLine;
+import org.apache.commons.cli.DefaultParser;
+import org.apache.commons.cli.ParseException;
+
+/**
+ * Classe qui calcule dans la même JVM les images de plusieurs configurations sauvegardées
+ * par SaveImage : le pool de calcul et le code déjà compilé servent à toutes les images,
+ * et le PNG d'une image est écrit pendant le calcul de la suivante. Les images trop grandes
+ * pour être gardées entières en mémoire sont calculées et écrites par bandes, comme par SaveImage
+ */
+class Lot {
+    /**
+     * Classe utilitaire, non instanciable
+     */
+    private Lot() {
+    }
+
+    /**
+     * Calcule l'image de chaque fichier de configuration et l'écrit dans un PNG de même nom,
+     * puis affiche les temps de calcul et d'écriture de chaque image
+     * @param chemins des fichiers de configuration, ou des dossiers dont les fichiers .txt
+     * sont des fichiers de configuration
+     * @return le nombre d'images qui n'ont pas pu être calculées ou écrites
+     */
+    static int execute(String[] chemins) {
+        ExecutorService ecriture = Executors.newSingleThreadExecutor();
+        Future<?> precedente = null;
+        int echecs = 0;
+        try {
+            for (File fichier : fichiers(chemins)) {
+                String nom = fichier.getPath().replaceFirst("\\.txt$", "");
+                long debut = System.nanoTime();
+                FractaleImage modele;
+                try {
+                    // analyse stricte : une option inconnue ou un argument en trop est une erreur du fichier
+                    CommandLine line = new DefaultParser().parse(Main.configOptions(),
+                            SaveImage.parseConfig(fichier.getPath()));
+                    if (!line.getArgList().isEmpty())
+                        throw new ParseException("arguments inattendus : " + String.join(" ", line.getArgList()));
+                    modele = new FractaleImage(Main.parseFractale(line), Main.parseConfiguration(line));
+                } catch (IOException | ParseException | IllegalArgumentException e) {
+                    System.err.println(fichier + " : " + e.getMessage());
+                    echecs++;
+                    continue;
+                }
+                if (SaveImage.parBandes(modele.getConfiguration())) {
+                    // l'écriture précédente est finie avant, pour borner la mémoire occupée
+                    echecs += attend(precedente);
+                    precedente = null;
+                    try {
+                        SaveImage.writeBandes(nom, modele);
+                        System.out.println(nom + ".png : calcul et écriture par bandes "
+                                + (System.nanoTime() - debut) / 1_000_000 + " ms");
+                    } catch (IOException e) {
+                        System.err.println(nom + ".png : " + e.getMessage());
+                        echecs++;
+                    }
+                    continue;
+                }
+                modele.calculImage();
+                long calcul = (System.nanoTime() - debut) / 1_000_000;
+                BufferedImage image = modele.getImage();
+                // une seule image attend d'être écrite, pour borner la mémoire occupée
+                echecs += attend(precedente);
+                precedente = ecriture.submit(() -> {
+                    long t = System.nanoTime();
+                    SaveImage.writeImage(nom, image);
+                    System.out.println(nom + ".png : calcul " + calcul + " ms, écriture "
+                            + (System.nanoTime() - t) / 1_000_000 + " ms");
+                    return null;
+                });
+            }
+            echecs += attend(precedente);
+        } finally {
+            ecriture.shutdown();
+        }
+        return echecs;
+    }
+
+    /**
+     * @param chemins des fichiers ou des dossiers
+     * @return les fichiers, suivis des fichiers .txt des dossiers triés par nom
+     */
+    private static List<File> fichiers(String[] chemins) {
+        List<File> res = new ArrayList<>();
+        for (String chemin : chemins) {
+            File f = new File(chemin);
+            File[] contenu = f.listFiles((dossier, nom) -> nom.endsWith(".txt"));
+            if (contenu == null)
+                res.add(f);
+            else {
+                Arrays.sort(contenu);
+                res.addAll(Arrays.asList(contenu));
+            }
+        }
+        return res;
+    }
+
+    /**
+     * Attend la fin de l'écriture d'une image
+     * @param ecriture l'écriture, ou null
+     * @return 1 si l'écriture a échoué, 0 sinon
+     */
+    private static int attend(Future<?> ecriture) {
+        if (ecriture == null)
+            return 0;
+        try {
+            ecriture.get();
+            return 0;
+        } catch (ExecutionException e) {
+            System.err.println(e.getCause().getMessage());
+            return 1;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return 1;
+        }
+    }
+}
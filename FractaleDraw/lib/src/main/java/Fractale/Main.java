@@ -1,6 +1,8 @@
 package Fractale;
 
 import java.awt.EventQueue;
+import java.io.IOException;
+import java.math.BigDecimal;
 
 import org.apache.commons.cli.*;
 
@@ -17,17 +19,23 @@ public class Main {
         Options help = helpOptions();
         Options graphic = graphicOptions();
         Options config = configOptions();
-        config.addOption(help.getOption("h")).addOption(graphic.getOption("g"));
+        config.addOption(help.getOption("h")).addOption(graphic.getOption("g")).addOption(graphic.getOption("T"))
+                .addOption(graphic.getOption("z")).addOption(graphic.getOption("b"));
 
         CommandLineParser parser = new DefaultParser();
         
         try {
             CommandLine line = parser.parse(help, args, true);
             if (line.hasOption("h")) {
-                printHelp(config.addOption(fileOption()));
+                printHelp(config.addOption(fileOption()).addOption(animationOption()).addOption(pyramideOption())
+                        .addOption(indicesOption()).addOption(relitOption()));
                 System.exit(0);
             }
             line = parser.parse(graphic, args, true);
+            if (line.hasOption("b")) {
+                parseExecution(line);
+                System.exit(Lot.execute(line.getOptionValues("b")) == 0 ? 0 : -1);
+            }
             
             Fractale fractale = null;
             Configuration configuration = null;
@@ -42,15 +50,29 @@ public class Main {
                     fractale = Mandelbrot.getInstance();
                     configuration = new Configuration.Builder().build();
                 }
+                parseExecution(line);
                 launchIG(new FractaleImage(fractale, configuration));
             }
             else {
-                config.addOption(fileOption());
+                config.addOption(fileOption()).addOption(animationOption()).addOption(pyramideOption())
+                        .addOption(indicesOption()).addOption(relitOption());
                 line = parser.parse(config, args, true);
                 String filename = line.getOptionValue("f");
                 fractale = parseFractale(line);
                 configuration = parseConfiguration(line);
-                SaveImage.save(filename, new FractaleImage(fractale, configuration));
+                parseExecution(line);
+                if (line.hasOption("a")) {
+                    parseAnimation(line, filename, fractale, configuration);
+                    return;
+                }
+                FractaleImage modele = line.hasOption("L") ? parseRelecture(line)
+                        : new FractaleImage(fractale, configuration);
+                if (line.hasOption("x"))
+                    parsePyramide(filename, modele);
+                else if (line.hasOption("I"))
+                    parseIndices(filename, modele);
+                else
+                    SaveImage.save(filename, modele);
             }
         } catch (IllegalArgumentException | ParseException e) {
             System.err.println(e.getMessage());
@@ -94,12 +116,25 @@ public class Main {
         return new Mandelbrot();
     }
 
+    /**
+     * Fixe le nombre de threads du pool de calcul et le niveau de compression des PNG
+     * selon la ligne de commande
+     * @param line la ligne de commande à analyser
+     * @throws ParseException
+     */
+    private static void parseExecution(CommandLine line) throws ParseException {
+        if (line.hasOption("T"))
+            FractaleImage.setParallelisme(((Number) line.getParsedOptionValue("T")).intValue());
+        if (line.hasOption("z"))
+            SaveImage.setCompression(((Number) line.getParsedOptionValue("z")).intValue());
+    }
+
     /**
      * @param line la ligne de commande à analyser
      * @return une configuration associée à la ligne de commande line
      * @throws ParseException
      */
-    private static Configuration parseConfiguration(CommandLine line) throws ParseException {
+    static Configuration parseConfiguration(CommandLine line) throws ParseException {
         Configuration.Builder config = new Configuration.Builder();
         
         if (line.hasOption("i"))
@@ -110,10 +145,11 @@ public class Main {
 
         if (line.hasOption("P")) {
             String[] P = line.getOptionValues("P");
-            double minRe = Double.parseDouble(P[0]);
-            double maxRe = Double.parseDouble(P[1]);
-            double minIm = Double.parseDouble(P[2]);
-            double maxIm = Double.parseDouble(P[3]);
+            // en précision arbitraire pour permettre les zooms profonds
+            BigDecimal minRe = new BigDecimal(P[0]);
+            BigDecimal maxRe = new BigDecimal(P[1]);
+            BigDecimal minIm = new BigDecimal(P[2]);
+            BigDecimal maxIm = new BigDecimal(P[3]);
             config.planComplexe(minRe, maxRe, minIm, maxIm);
         }
         
@@ -147,6 +183,15 @@ public class Main {
             v3 = Integer.parseInt(H[2]);
             config.rgb(false, v1, v2, v3);
         }
+
+        if (line.hasOption("d"))
+            config.periodicite(true);
+
+        if (line.hasOption("S"))
+            config.scalaire(true);
+
+        if (line.hasOption("s"))
+            config.subdivision(true);
         return config.build();
     }
 
@@ -180,6 +225,29 @@ public class Main {
                 .argName("nom")
                 .build();
         res.addOption(load);
+        Option threads = Option.builder("T")
+                .longOpt("threads")
+                .desc("Nombre de threads du calcul (un par processeur par défaut)")
+                .hasArg(true)
+                .argName("nombre")
+                .type(Number.class)
+                .build();
+        res.addOption(threads);
+        Option compression = Option.builder("z")
+                .longOpt("compression")
+                .desc("Niveau de compression des PNG, de 0 (rapide) à 9 (fichiers plus petits), 6 par défaut")
+                .hasArg(true)
+                .argName("niveau")
+                .type(Number.class)
+                .build();
+        res.addOption(compression);
+        Option batch = Option.builder("b")
+                .longOpt("batch")
+                .desc("Calcule les images de fichiers de configuration sauvegardés, ou des fichiers .txt de dossiers, dans des PNG de même nom")
+                .hasArgs()
+                .argName("fichiers")
+                .build();
+        res.addOption(batch);
         return res;
     }
 
@@ -197,10 +265,130 @@ public class Main {
         return filename;
     }
 
+    /**
+     * @return l'option de l'animation d'un zoom
+     */
+    private static Option animationOption(){
+        return Option.builder("a")
+                .longOpt("animation")
+                .desc("Calcule un zoom sur un point en images PNG numérotées à partir du nom de fichier : "
+                        + "une image clé suréchantillonnée par facteur 2 de zoom, rééchantillonnée pour les images intermédiaires")
+                .hasArg(true)
+                .numberOfArgs(5)
+                .valueSeparator(' ')
+                .argName("réel> <imaginaire> <pas initial> <pas final> <nombre d'images")
+                .build();
+    }
+
+    /**
+     * Calcule l'animation d'un zoom selon la ligne de commande
+     * @param line la ligne de commande à analyser
+     * @param filename le début du nom des images
+     * @param fractale la fractale à calculer
+     * @param configuration la configuration des images
+     */
+    private static void parseAnimation(CommandLine line, String filename, Fractale fractale,
+            Configuration configuration) {
+        String[] a = line.getOptionValues("a");
+        try {
+            Animation.execute(filename, fractale, configuration, new BigDecimal(a[0]), new BigDecimal(a[1]),
+                    Double.parseDouble(a[2]), Double.parseDouble(a[3]), Integer.parseInt(a[4]));
+        } catch (IOException e) {
+            System.err.println(e.getMessage());
+            System.exit(-1);
+        }
+    }
+
+    /**
+     * @return l'option de la pyramide de tuiles
+     */
+    private static Option pyramideOption(){
+        return Option.builder("x")
+                .longOpt("tuiles")
+                .desc("Écrit l'image en pyramide de tuiles PNG de " + Pyramide.TUILE + " pixels dans le dossier du nom de fichier, "
+                        + "rangées en niveau/colonne/ligne.png, chaque niveau étant réduit de moitié jusqu'à une seule tuile")
+                .build();
+    }
+
+    /**
+     * Écrit la pyramide de tuiles d'une image
+     * @param filename le dossier des tuiles
+     * @param modele le modèle de l'image de plus grande résolution
+     */
+    private static void parsePyramide(String filename, FractaleImage modele) {
+        try {
+            Pyramide.execute(filename, modele);
+        } catch (IOException e) {
+            System.err.println(e.getMessage());
+            System.exit(-1);
+        }
+    }
+
+    /**
+     * @return l'option de l'écriture des indices de divergence bruts
+     */
+    private static Option indicesOption(){
+        return Option.builder("I")
+                .longOpt("indices")
+                .desc("Écrit les indices de divergence bruts de l'image dans le fichier nom.idx au lieu du PNG")
+                .build();
+    }
+
+    /**
+     * @return l'option de la relecture d'un fichier d'indices
+     */
+    private static Option relitOption(){
+        return Option.builder("L")
+                .longOpt("relit")
+                .desc("Relit les indices de divergence d'un fichier .idx au lieu de calculer l'image : "
+                        + "seules les options de couleur -R, -H et -c sont appliquées")
+                .hasArg(true)
+                .argName("fichier")
+                .build();
+    }
+
+    /**
+     * Écrit les indices de divergence bruts d'une image
+     * @param filename le nom du fichier, sans l'extension
+     * @param modele le modèle de l'image
+     */
+    private static void parseIndices(String filename, FractaleImage modele) {
+        try {
+            FichierIndices.ecrit(filename + ".idx", modele);
+        } catch (IOException e) {
+            System.err.println(e.getMessage());
+            System.exit(-1);
+        }
+    }
+
+    /**
+     * Relit un fichier d'indices selon la ligne de commande et lui applique les couleurs
+     * de la ligne de commande
+     * @param line la ligne de commande à analyser
+     * @return le modèle de l'image du fichier
+     * @throws ParseException
+     */
+    private static FractaleImage parseRelecture(CommandLine line) throws ParseException {
+        FractaleImage modele = null;
+        try {
+            modele = FichierIndices.lit(line.getOptionValue("L"));
+        } catch (IOException e) {
+            System.err.println(e.getMessage());
+            System.exit(-1);
+        }
+        Configuration config = modele.getConfiguration();
+        Configuration couleurs = parseConfiguration(line);
+        if (line.hasOption("R") || line.hasOption("H"))
+            config.setColor(couleurs.getColor());
+        if (line.hasOption("c"))
+            config.setConvergentColor(couleurs.getConvergentColor());
+        return modele;
+    }
+
     /**
      * @return les options de la fractale et de la configuration
      */
-    private static Options configOptions() {
+    static Options configOptions() {
         Options res = new Options();
 
         OptionGroup fractale = new OptionGroup();
@@ -288,6 +476,24 @@ public class Main {
                 .build();
         couleur.addOption(hsb);
         res.addOptionGroup(couleur);
+
+        Option periodicite = Option.builder("d")
+                .longOpt("periodicite")
+                .desc("Détecte les orbites périodiques pour arrêter plus tôt le calcul des points convergents")
+                .build();
+        res.addOption(periodicite);
+
+        Option scalaire = Option.builder("S")
+                .longOpt("scalaire")
+                .desc("Calcule les pixels un par un sans le noyau vectoriel (pour comparer les performances)")
+                .build();
+        res.addOption(scalaire);
+
+        Option subdivision = Option.builder("s")
+                .longOpt("subdivision")
+                .desc("Calcule l'image par subdivision de rectangles (Mariani-Silver) : un rectangle dont le bord est uniforme est rempli sans être calculé")
+                .build();
+        res.addOption(subdivision);
         return res;
     }
 }
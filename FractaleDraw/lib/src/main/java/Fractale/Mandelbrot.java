@@ -1,17 +1,10 @@
 package Fractale;
 
 
-import java.util.function.BiFunction;
-
 /**
  * Classe représentant l'ensemble de Mandelbrot
  */
 public final class Mandelbrot extends Fractale {
-    /**
-     * la fonction associée à Mandelbrot
-     */
-    private final static BiFunction<Complexe,Complexe,Complexe> f =
-            (c,z) -> c.plus(z.puissance(2));
     /**
      * l'unique instance de Mandelbrot
      */
@@ -24,17 +17,129 @@ public final class Mandelbrot extends Fractale {
         return instance;
     }
 
+    /**
+     * Teste en forme close si c appartient à la cardioïde principale ou au disque de période 2,
+     * dont les points ne divergent jamais
+     * @param cRe la partie réelle de c
+     * @param cIm la partie imaginaire de c
+     * @return true si c est strictement à l'intérieur de l'une de ces deux régions
+     */
+    static boolean interieur(double cRe, double cIm){
+        double y2 = cIm * cIm;
+        double x = cRe - 0.25;
+        double q = x * x + y2;
+        if (q * (q + x) < 0.25 * y2)
+            return true;
+        double x1 = cRe + 1;
+        return x1 * x1 + y2 < 0.0625;
+    }
+
+    @Override
+    public int divergenceIndex(double cRe, double cIm, int maxIter){
+        if (interieur(cRe, cIm))
+            return maxIter;
+        int ite = 0;
+        double zRe = 0;
+        double zIm = 0;
+        while (ite < maxIter && zRe * zRe + zIm * zIm <= BORNE) {
+            double t = zRe * zIm;
+            zRe = cRe + (zRe * zRe - zIm * zIm);
+            zIm = cIm + (t + t);
+            ite ++;
+        }
+        return ite;
+    }
+
+    @Override
+    public int divergenceIndex(double cRe, double cIm, int maxIter, double tolerance){
+        int n = iterations(cRe, cIm, maxIter, tolerance);
+        return n < 0 ? maxIter : n;
+    }
+
     @Override
-    public int divergenceIndex(Complexe c, int maxIter){
+    int iterations(double cRe, double cIm, int maxIter, double tolerance){
+        if (interieur(cRe, cIm))
+            return -1;
         int ite = 0;
-        Complexe zn = Complexe.ZERO;
-        while (ite < maxIter && zn.module() <= 2) {
-            zn = f.apply(c,zn);
+        double zRe = 0;
+        double zIm = 0;
+        double sRe = 0;
+        double sIm = 0;
+        int periode = 0;
+        int limite = 1;
+        while (ite < maxIter && zRe * zRe + zIm * zIm <= BORNE) {
+            double t = zRe * zIm;
+            zRe = cRe + (zRe * zRe - zIm * zIm);
+            zIm = cIm + (t + t);
             ite ++;
+            if (Math.abs(zRe - sRe) <= tolerance && Math.abs(zIm - sIm) <= tolerance && zRe * zRe + zIm * zIm <= BORNE)
+                return -1 - ite;
+            if (++periode == limite) {
+                sRe = zRe;
+                sIm = zIm;
+                periode = 0;
+                limite <<= 1;
+            }
         }
         return ite;
     }
     
+    @Override
+    int reprise(double cRe, double cIm, double[] z, int ite, int maxIter, double tolerance){
+        if (interieur(cRe, cIm)) {
+            z[0] = Double.NaN;
+            z[1] = Double.NaN;
+            return maxIter;
+        }
+        boolean periodicite = tolerance >= 0;
+        double zRe = ite == 0 ? 0 : z[0];
+        double zIm = ite == 0 ? 0 : z[1];
+        double sRe = zRe;
+        double sIm = zIm;
+        int periode = 0;
+        int limite = 1;
+        while (ite < maxIter && zRe * zRe + zIm * zIm <= BORNE) {
+            double t = zRe * zIm;
+            zRe = cRe + (zRe * zRe - zIm * zIm);
+            zIm = cIm + (t + t);
+            ite ++;
+            if (periodicite) {
+                if (Math.abs(zRe - sRe) <= tolerance && Math.abs(zIm - sIm) <= tolerance
+                        && zRe * zRe + zIm * zIm <= BORNE)
+                    break;
+                if (++periode == limite) {
+                    sRe = zRe;
+                    sIm = zIm;
+                    periode = 0;
+                    limite <<= 1;
+                }
+            }
+        }
+        if (ite < maxIter && zRe * zRe + zIm * zIm <= BORNE) {
+            // orbite périodique : le point ne divergera pas
+            z[0] = Double.NaN;
+            z[1] = Double.NaN;
+            return maxIter;
+        }
+        z[0] = zRe;
+        z[1] = zIm;
+        return ite;
+    }
+
+    /**
+     * @param o un objet
+     * @return true si o est aussi l'ensemble de Mandelbrot
+     */
+    @Override
+    public boolean equals(Object o){
+        return o instanceof Mandelbrot;
+    }
+
+    @Override
+    public int hashCode(){
+        return Mandelbrot.class.hashCode();
+    }
+
     @Override
     public Mandelbrot copy(){
         return this;
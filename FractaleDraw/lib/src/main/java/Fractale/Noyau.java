@@ -0,0 +1,136 @@
+package Fractale;
+
+
+/**
+ * Classe abstraite représentant un noyau de calcul des indices de divergence
+ * des pixels d'une image
+ */
+abstract class Noyau {
+    /**
+     * true si le module jdk.incubator.vector est chargé dans la JVM
+     */
+    private static final boolean VECTEUR_DISPONIBLE =
+            ModuleLayer.boot().findModule("jdk.incubator.vector").isPresent();
+    /**
+     * le plus petit pas que la perturbation calcule sans que les écarts ne sortent des doubles normaux
+     */
+    private static final double PAS_MIN_PERTURBATION = 1e-290;
+
+    /**
+     * @param x la colonne du pixel
+     * @param y la ligne du pixel
+     * @return l'indice de divergence du pixel (x, y)
+     */
+    abstract int indice(int x, int y);
+
+    /**
+     * Calcule l'indice de divergence d'un pixel en comptant les itérations faites, qui sont
+     * moins nombreuses que l'indice quand une orbite périodique arrête l'itération
+     * @param x la colonne du pixel
+     * @param y la ligne du pixel
+     * @return le nombre d'itérations faites dans les 32 bits de poids fort et l'indice de
+     * divergence du pixel (x, y) dans les 32 bits de poids faible
+     */
+    long sonde(int x, int y) {
+        int res = indice(x, y);
+        return resultat(res, res);
+    }
+
+    /**
+     * @param iterations le nombre d'itérations faites pour calculer un pixel
+     * @param indice l'indice de divergence du pixel
+     * @return le résultat de sonde pour ce pixel
+     */
+    static long resultat(int iterations, int indice) {
+        return ((long) iterations << 32) | indice;
+    }
+
+    /**
+     * Calcule les indices de divergence d'une portion de ligne
+     * @param y la ligne
+     * @param fromX la première colonne à calculer
+     * @param toX la colonne qui suit la dernière colonne à calculer
+     * @param indices le tableau qui reçoit les indices
+     * @param offset la position dans indices de l'indice du pixel (fromX, y)
+     */
+    void ligne(int y, int fromX, int toX, int[] indices, int offset) {
+        ligne(y, fromX, toX, 1, indices, offset);
+    }
+
+    /**
+     * Calcule les indices de divergence d'un pixel sur ecart d'une portion de ligne
+     * @param y la ligne
+     * @param fromX la première colonne à calculer
+     * @param toX la borne (exclue) des colonnes à calculer
+     * @param ecart l'écart entre deux colonnes calculées
+     * @param indices le tableau qui reçoit les indices
+     * @param offset la position dans indices de l'indice du pixel (fromX, y), l'indice
+     * du pixel (x, y) étant rangé en offset + x - fromX
+     */
+    void ligne(int y, int fromX, int toX, int ecart, int[] indices, int offset) {
+        for (int x = fromX; x < toX; x += ecart)
+            indices[offset + x - fromX] = indice(x, y);
+    }
+
+    /**
+     * @param configuration la configuration de l'image
+     * @return true si les doubles distinguent suffisamment deux pixels voisins, c'est-à-dire
+     * si le pas vaut au moins 256 ulp de la plus grande coordonnée rencontrée (au moins 2)
+     */
+    static boolean precisionDouble(Configuration configuration) {
+        return configuration.getPas() >= 256 * Math.ulp(Math.max(magnitude(configuration), 2));
+    }
+
+    /**
+     * @param configuration la configuration de l'image
+     * @return true si l'arithmétique double-double distingue suffisamment deux pixels voisins,
+     * avec la même marge que precisionDouble sur une mantisse de 106 bits
+     */
+    static boolean precisionDoubleDouble(Configuration configuration) {
+        return configuration.getPas() * 0x1p53 >= 256 * Math.ulp(Math.max(magnitude(configuration), 2));
+    }
+
+    /**
+     * @param fractale la fractale à calculer
+     * @param configuration la configuration de l'image
+     * @return true si l'un des noyaux peut calculer l'image sans perdre la précision des pixels :
+     * la perturbation jusqu'à la limite des doubles pour Mandelbrot, le double-double pour Julia
+     */
+    static boolean precisionSuffisante(Fractale fractale, Configuration configuration) {
+        if (fractale instanceof Mandelbrot)
+            return configuration.getPas() >= PAS_MIN_PERTURBATION;
+        return precisionDoubleDouble(configuration);
+    }
+
+    /**
+     * @param configuration la configuration de l'image
+     * @return la plus grande valeur absolue des bornes du plan complexe
+     */
+    private static double magnitude(Configuration configuration) {
+        return Math.max(Math.max(Math.abs(configuration.getMinRe()), Math.abs(configuration.getMaxRe())),
+                Math.max(Math.abs(configuration.getMinIm()), Math.abs(configuration.getMaxIm())));
+    }
+
+    /**
+     * Choisit le noyau le plus rapide pour une fractale et une configuration : si les doubles ne
+     * suffisent plus, le noyau double-double tant qu'il suffit (toujours pour Julia) et sinon
+     * le noyau par perturbation pour Mandelbrot ; sinon le noyau vectoriel si la fractale
+     * le permet, si le module jdk.incubator.vector est disponible et si le mode scalaire
+     * n'est pas forcé, le noyau scalaire sinon
+     * @param fractale la fractale à calculer
+     * @param configuration la configuration de l'image
+     * @return un noyau de calcul pour la fractale et la configuration
+     */
+    static Noyau pour(Fractale fractale, Configuration configuration) {
+        if (!precisionDouble(configuration)) {
+            if (fractale instanceof Mandelbrot && !precisionDoubleDouble(configuration))
+                return new NoyauPerturbation(configuration);
+            return new NoyauDoubleDouble(fractale, configuration);
+        }
+        boolean vectorisable = fractale instanceof Mandelbrot
+                || (fractale instanceof Julia && ((Julia) fractale).isQuadratique());
+        if (vectorisable && VECTEUR_DISPONIBLE && !configuration.isScalaire() && NoyauVectoriel.utile())
+            return new NoyauVectoriel(fractale, configuration);
+        return new NoyauScalaire(fractale, configuration);
+    }
+}
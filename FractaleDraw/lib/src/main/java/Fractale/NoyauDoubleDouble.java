@@ -0,0 +1,241 @@
+package Fractale;
+
+
+import java.math.BigDecimal;
+
+/**
+ * Noyau en arithmétique double-double (environ 106 bits de mantisse) pour Mandelbrot et Julia,
+ * utilisé quand le pas est trop petit pour les doubles mais pas assez pour justifier la perturbation.
+ * Un nombre est représenté par une partie haute et une partie basse dont la somme exacte est sa valeur
+ */
+final class NoyauDoubleDouble extends Noyau {
+    /**
+     * le tableau de travail de chaque thread, qui reçoit les résultats de somme et produit,
+     * pour que le calcul d'un pixel n'alloue rien
+     */
+    private static final ThreadLocal<double[]> TRAVAIL = ThreadLocal.withInitial(() -> new double[2]);
+    /**
+     * true si la fractale est Mandelbrot, false si c'est un Julia
+     */
+    private final boolean mandelbrot;
+    /**
+     * les parties réelles des coefficients du Julia, indexées par degré
+     */
+    private final double[] coefRe;
+    /**
+     * les parties imaginaires des coefficients du Julia, indexées par degré
+     */
+    private final double[] coefIm;
+    /**
+     * le pas de discrétisation
+     */
+    private final double pas;
+    /**
+     * le maximum d'itération
+     */
+    private final int maxIter;
+    /**
+     * true si la détection des orbites périodiques est activée
+     */
+    private final boolean periodicite;
+    /**
+     * la tolérance de la détection des orbites périodiques
+     */
+    private final double tolerance;
+    /**
+     * la partie haute du minimum de l'intervalle des réels
+     */
+    private final double minReH;
+    /**
+     * la partie basse du minimum de l'intervalle des réels
+     */
+    private final double minReL;
+    /**
+     * la partie haute du maximum de l'intervalle des imaginaires
+     */
+    private final double maxImH;
+    /**
+     * la partie basse du maximum de l'intervalle des imaginaires
+     */
+    private final double maxImL;
+
+    /**
+     * Construit un noyau double-double
+     * @param fractale la fractale à calculer
+     * @param configuration la configuration de l'image
+     */
+    NoyauDoubleDouble(Fractale fractale, Configuration configuration) {
+        this.mandelbrot = fractale instanceof Mandelbrot;
+        if (mandelbrot) {
+            coefRe = null;
+            coefIm = null;
+        }
+        else {
+            coefRe = ((Julia) fractale).getCoefRe();
+            coefIm = ((Julia) fractale).getCoefIm();
+        }
+        this.pas = configuration.getPas();
+        this.maxIter = configuration.getMaxIter();
+        this.periodicite = configuration.isPeriodicite();
+        this.tolerance = configuration.getTolerance();
+        BigDecimal minRe = configuration.getMinReExact();
+        BigDecimal maxIm = configuration.getMaxImExact();
+        this.minReH = minRe.doubleValue();
+        this.minReL = minRe.subtract(new BigDecimal(minReH)).doubleValue();
+        this.maxImH = maxIm.doubleValue();
+        this.maxImL = maxIm.subtract(new BigDecimal(maxImH)).doubleValue();
+    }
+
+    /**
+     * Additionne deux double-double
+     * @param aH la partie haute de a
+     * @param aL la partie basse de a
+     * @param bH la partie haute de b
+     * @param bL la partie basse de b
+     * @param r reçoit la partie haute puis la partie basse de a + b
+     */
+    private static void somme(double aH, double aL, double bH, double bL, double[] r) {
+        double s = aH + bH;
+        double v = s - aH;
+        double e = (aH - (s - v)) + (bH - v) + aL + bL;
+        r[0] = s + e;
+        r[1] = e - (r[0] - s);
+    }
+
+    /**
+     * Multiplie deux double-double
+     * @param aH la partie haute de a
+     * @param aL la partie basse de a
+     * @param bH la partie haute de b
+     * @param bL la partie basse de b
+     * @param r reçoit la partie haute puis la partie basse de a * b
+     */
+    private static void produit(double aH, double aL, double bH, double bL, double[] r) {
+        double p = aH * bH;
+        double e = Math.fma(aH, bH, -p) + (aH * bL + aL * bH);
+        r[0] = p + e;
+        r[1] = e - (r[0] - p);
+    }
+
+    @Override
+    int indice(int x, int y) {
+        int n = iterations(x, y, TRAVAIL.get());
+        return n < 0 ? maxIter : n;
+    }
+
+    @Override
+    long sonde(int x, int y) {
+        int n = iterations(x, y, TRAVAIL.get());
+        return n < 0 ? resultat(-1 - n, maxIter) : resultat(n, n);
+    }
+
+    @Override
+    void ligne(int y, int fromX, int toX, int ecart, int[] indices, int offset) {
+        double[] r = TRAVAIL.get();
+        for (int x = fromX; x < toX; x += ecart) {
+            int n = iterations(x, y, r);
+            indices[offset + x - fromX] = n < 0 ? maxIter : n;
+        }
+    }
+
+    /**
+     * @param x la colonne du pixel
+     * @param y la ligne du pixel
+     * @param r un tableau de travail de deux doubles, qui reçoit les résultats de somme et produit
+     * @return le nombre n d'itérations faites, qui est l'indice de divergence du pixel (x, y),
+     * ou -1 - n si une orbite périodique a été détectée après n itérations
+     */
+    private int iterations(int x, int y, double[] r) {
+        double p = pas * x;
+        somme(minReH, minReL, p, Math.fma(pas, x, -p), r);
+        double reH = r[0];
+        double reL = r[1];
+        p = pas * y;
+        somme(maxImH, maxImL, -p, -Math.fma(pas, y, -p), r);
+        double imH = r[0];
+        double imL = r[1];
+
+        double zReH, zReL, zImH, zImL, cReH, cReL, cImH, cImL;
+        if (mandelbrot) {
+            zReH = zReL = zImH = zImL = 0;
+            cReH = reH;
+            cReL = reL;
+            cImH = imH;
+            cImL = imL;
+        }
+        else {
+            zReH = reH;
+            zReL = reL;
+            zImH = imH;
+            zImL = imL;
+            cReH = cReL = cImH = cImL = 0;
+        }
+        int degre = mandelbrot ? 2 : coefRe.length - 1;
+        double sRe = zReH, sReL = zReL, sIm = zImH, sImL = zImL;
+        int periode = 0;
+        int limite = 1;
+        int ite = 0;
+        while (ite < maxIter && zReH * zReH + zImH * zImH <= Fractale.BORNE) {
+            if (mandelbrot) {
+                // z^2 + c = (x^2 - y^2 + cRe) + i(2xy + cIm)
+                produit(zReH, zReL, zReH, zReL, r);
+                double xxH = r[0], xxL = r[1];
+                produit(zImH, zImL, zImH, zImL, r);
+                double yyH = r[0], yyL = r[1];
+                produit(zReH, zReL, zImH, zImL, r);
+                double xyH = r[0], xyL = r[1];
+                somme(xxH, xxL, -yyH, -yyL, r);
+                somme(r[0], r[1], cReH, cReL, r);
+                zReH = r[0];
+                zReL = r[1];
+                somme(2 * xyH, 2 * xyL, cImH, cImL, r);
+                zImH = r[0];
+                zImL = r[1];
+            }
+            else {
+                // schéma de Horner : ((a_n z + a_n-1) z + ...) z + a_0
+                double wReH = coefRe[degre], wReL = 0, wImH = coefIm[degre], wImL = 0;
+                for (int k = degre - 1; k >= 0; k--) {
+                    produit(wReH, wReL, zReH, zReL, r);
+                    double aH = r[0], aL = r[1];
+                    produit(wImH, wImL, zImH, zImL, r);
+                    somme(aH, aL, -r[0], -r[1], r);
+                    somme(r[0], r[1], coefRe[k], 0, r);
+                    double tH = r[0], tL = r[1];
+                    produit(wReH, wReL, zImH, zImL, r);
+                    aH = r[0];
+                    aL = r[1];
+                    produit(wImH, wImL, zReH, zReL, r);
+                    somme(aH, aL, r[0], r[1], r);
+                    somme(r[0], r[1], coefIm[k], 0, r);
+                    wImH = r[0];
+                    wImL = r[1];
+                    wReH = tH;
+                    wReL = tL;
+                }
+                zReH = wReH;
+                zReL = wReL;
+                zImH = wImH;
+                zImL = wImL;
+            }
+            ite ++;
+            if (periodicite) {
+                // les parties hautes et basses sont comparées séparément, pour qu'une tolérance
+                // nulle demande que l'état double-double se répète exactement
+                if (Math.abs(zReH - sRe) <= tolerance && Math.abs(zReL - sReL) <= tolerance
+                        && Math.abs(zImH - sIm) <= tolerance && Math.abs(zImL - sImL) <= tolerance
+                        && zReH * zReH + zImH * zImH <= Fractale.BORNE)
+                    return -1 - ite;
+                if (++periode == limite) {
+                    sRe = zReH;
+                    sReL = zReL;
+                    sIm = zImH;
+                    sImL = zImL;
+                    periode = 0;
+                    limite <<= 1;
+                }
+            }
+        }
+        return ite;
+    }
+}
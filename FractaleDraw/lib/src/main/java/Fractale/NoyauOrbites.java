@@ -0,0 +1,90 @@
+package Fractale;
+
+
+import java.util.Arrays;
+
+/**
+ * Noyau qui calcule les pixels un par un avec Fractale.reprise et garde le dernier point de
+ * l'orbite de chaque pixel calculé, pour que l'itération des pixels qui atteignent maxIter
+ * puisse être reprise quand maxIter augmente
+ */
+final class NoyauOrbites extends Noyau {
+    /**
+     * le point de l'orbite de chaque thread, pour ne pas en allouer un par pixel
+     */
+    private static final ThreadLocal<double[]> TRAVAIL = ThreadLocal.withInitial(() -> new double[2]);
+    /**
+     * la fractale
+     */
+    private final Fractale fractale;
+    /**
+     * le pas de discrétisation
+     */
+    private final double pas;
+    /**
+     * le maximum d'itération
+     */
+    private final int maxIter;
+    /**
+     * la tolérance de la détection des orbites périodiques, négative si elle est désactivée
+     */
+    private final double tolerance;
+    /**
+     * le minimum de l'intervalle des réels
+     */
+    private final double minRe;
+    /**
+     * le maximum de l'intervalle des imaginaires
+     */
+    private final double maxIm;
+    /**
+     * la longueur de l'image
+     */
+    private final int longueur;
+    /**
+     * les parties réelles des derniers points des orbites, ligne par ligne : NaN pour les
+     * pixels intérieurs, Double.POSITIVE_INFINITY pour les pixels qui n'ont pas été calculés
+     */
+    final double[] zRe;
+    /**
+     * les parties imaginaires des derniers points des orbites, ligne par ligne
+     */
+    final double[] zIm;
+
+    /**
+     * Construit un noyau qui garde l'état des orbites
+     * @param fractale la fractale à calculer
+     * @param configuration la configuration de l'image
+     */
+    NoyauOrbites(Fractale fractale, Configuration configuration) {
+        this.fractale = fractale;
+        this.pas = configuration.getPas();
+        this.maxIter = configuration.getMaxIter();
+        this.tolerance = configuration.isPeriodicite() ? configuration.getTolerance() : -1;
+        this.minRe = configuration.getMinRe();
+        this.maxIm = configuration.getMaxIm();
+        this.longueur = configuration.getLongueur();
+        this.zRe = new double[longueur * configuration.getLargeur()];
+        this.zIm = new double[zRe.length];
+        Arrays.fill(zRe, Double.POSITIVE_INFINITY);
+    }
+
+    @Override
+    int indice(int x, int y) {
+        double[] z = TRAVAIL.get();
+        int res = fractale.reprise(minRe + (pas * x), maxIm - (pas * y), z, 0, maxIter, tolerance);
+        zRe[y * longueur + x] = z[0];
+        zIm[y * longueur + x] = z[1];
+        return res;
+    }
+
+    @Override
+    long sonde(int x, int y) {
+        int res = indice(x, y);
+        if (tolerance < 0 || res < maxIter || !Double.isNaN(zRe[y * longueur + x]))
+            return resultat(res, res);
+        // une orbite périodique a arrêté l'itération : le pixel est recompté
+        int n = fractale.iterations(minRe + (pas * x), maxIm - (pas * y), maxIter, tolerance);
+        return resultat(n < 0 ? -1 - n : n, res);
+    }
+}
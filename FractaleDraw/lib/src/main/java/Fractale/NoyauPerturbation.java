@@ -0,0 +1,111 @@
+package Fractale;
+
+
+import java.math.BigDecimal;
+import java.math.MathContext;
+import java.util.Arrays;
+
+/**
+ * Noyau de Mandelbrot pour les zooms profonds, quand les doubles ne distinguent plus les pixels.
+ * Une orbite de référence est calculée une seule fois en précision arbitraire au centre de l'image,
+ * puis chaque pixel est itéré en double comme un écart à cette orbite :
+ * d(n+1) = 2 Z(n) d(n) + d(n)^2 + dc.
+ * Quand le point |Z(n) + d(n)| devient plus petit que l'écart |d(n)| (source des "glitchs"),
+ * ou quand l'orbite de référence est épuisée, l'écart est rebasé sur le début de la référence.
+ */
+final class NoyauPerturbation extends Noyau {
+    /**
+     * le nombre de chiffres significatifs ajoutés à ceux du pas pour l'orbite de référence
+     */
+    private static final int CHIFFRES_GARDE = 20;
+    /**
+     * les parties réelles de l'orbite de référence
+     */
+    private final double[] refRe;
+    /**
+     * les parties imaginaires de l'orbite de référence
+     */
+    private final double[] refIm;
+    /**
+     * la colonne du pixel de référence
+     */
+    private final int x0;
+    /**
+     * la ligne du pixel de référence
+     */
+    private final int y0;
+    /**
+     * le pas de discrétisation
+     */
+    private final double pas;
+    /**
+     * le maximum d'itération
+     */
+    private final int maxIter;
+
+    /**
+     * Construit un noyau par perturbation et calcule l'orbite de référence au centre de l'image
+     * @param configuration la configuration de l'image
+     */
+    NoyauPerturbation(Configuration configuration) {
+        this.pas = configuration.getPas();
+        this.maxIter = configuration.getMaxIter();
+        this.x0 = configuration.getLongueur() / 2;
+        this.y0 = configuration.getLargeur() / 2;
+        BigDecimal cRe = configuration.getMinReExact().add(BigDecimal.valueOf(x0 * pas));
+        BigDecimal cIm = configuration.getMaxImExact().subtract(BigDecimal.valueOf(y0 * pas));
+        int chiffres = (int) Math.ceil(-Math.log10(pas)) + CHIFFRES_GARDE;
+        MathContext mc = new MathContext(Math.max(chiffres, 34));
+
+        // Z(0) = 0 et Z(1) = c sont toujours conservés pour que le rebasage puisse avancer
+        double[] re = new double[Math.min(maxIter, 1024) + 1];
+        double[] im = new double[re.length];
+        BigDecimal zRe = BigDecimal.ZERO;
+        BigDecimal zIm = BigDecimal.ZERO;
+        int n = 0;
+        do {
+            BigDecimal t = zRe.multiply(zIm, mc);
+            BigDecimal nRe = zRe.multiply(zRe, mc).subtract(zIm.multiply(zIm, mc), mc).add(cRe, mc);
+            zIm = t.add(t, mc).add(cIm, mc);
+            zRe = nRe;
+            n++;
+            if (n >= re.length) {
+                re = Arrays.copyOf(re, Math.min(2 * re.length, maxIter + 1));
+                im = Arrays.copyOf(im, re.length);
+            }
+            re[n] = zRe.doubleValue();
+            im[n] = zIm.doubleValue();
+        } while (n < maxIter && re[n] * re[n] + im[n] * im[n] <= Fractale.BORNE);
+        this.refRe = Arrays.copyOf(re, n + 1);
+        this.refIm = Arrays.copyOf(im, n + 1);
+    }
+
+    @Override
+    int indice(int x, int y) {
+        double dcRe = (x - x0) * pas;
+        double dcIm = (y0 - y) * pas;
+        int fin = refRe.length - 1;
+        int m = 0;
+        double dRe = 0;
+        double dIm = 0;
+        for (int ite = 0; ite < maxIter; ite++) {
+            double zRe = refRe[m] + dRe;
+            double zIm = refIm[m] + dIm;
+            double z2 = zRe * zRe + zIm * zIm;
+            if (!(z2 <= Fractale.BORNE))
+                return ite;
+            if (m == fin || z2 < dRe * dRe + dIm * dIm) {
+                dRe = zRe;
+                dIm = zIm;
+                m = 0;
+            }
+            double rRe = refRe[m];
+            double rIm = refIm[m];
+            double nRe = 2 * (rRe * dRe - rIm * dIm) + (dRe * dRe - dIm * dIm) + dcRe;
+            dIm = 2 * (rRe * dIm + rIm * dRe) + 2 * dRe * dIm + dcIm;
+            dRe = nRe;
+            m++;
+        }
+        return maxIter;
+    }
+}
@@ -0,0 +1,67 @@
+package Fractale;
+
+
+/**
+ * Noyau qui calcule les pixels un par un avec Fractale.divergenceIndex
+ */
+final class NoyauScalaire extends Noyau {
+    /**
+     * la fractale
+     */
+    private final Fractale fractale;
+    /**
+     * le pas de discrétisation
+     */
+    private final double pas;
+    /**
+     * le maximum d'itération
+     */
+    private final int maxIter;
+    /**
+     * true si la détection des orbites périodiques est activée
+     */
+    private final boolean periodicite;
+    /**
+     * la tolérance de la détection des orbites périodiques
+     */
+    private final double tolerance;
+    /**
+     * le minimum de l'intervalle des réels
+     */
+    private final double minRe;
+    /**
+     * le maximum de l'intervalle des imaginaires
+     */
+    private final double maxIm;
+
+    /**
+     * Construit un noyau scalaire
+     * @param fractale la fractale à calculer
+     * @param configuration la configuration de l'image
+     */
+    NoyauScalaire(Fractale fractale, Configuration configuration) {
+        this.fractale = fractale;
+        this.pas = configuration.getPas();
+        this.maxIter = configuration.getMaxIter();
+        this.periodicite = configuration.isPeriodicite();
+        this.tolerance = configuration.getTolerance();
+        this.minRe = configuration.getMinRe();
+        this.maxIm = configuration.getMaxIm();
+    }
+
+    @Override
+    int indice(int x, int y) {
+        double re = minRe + (pas * x);
+        double im = maxIm - (pas * y);
+        return periodicite ? fractale.divergenceIndex(re, im, maxIter, tolerance)
+                : fractale.divergenceIndex(re, im, maxIter);
+    }
+
+    @Override
+    long sonde(int x, int y) {
+        if (!periodicite)
+            return super.sonde(x, y);
+        int n = fractale.iterations(minRe + (pas * x), maxIm - (pas * y), maxIter, tolerance);
+        return n < 0 ? resultat(-1 - n, maxIter) : resultat(n, n);
+    }
+}
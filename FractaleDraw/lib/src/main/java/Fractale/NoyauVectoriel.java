@@ -0,0 +1,189 @@
+package Fractale;
+
+
+import jdk.incubator.vector.DoubleVector;
+import jdk.incubator.vector.VectorMask;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorSpecies;
+
+/**
+ * Noyau qui itère en parallèle plusieurs pixels adjacents d'une ligne avec l'API Vector,
+ * pour Mandelbrot et les ensembles de Julia de la forme z^2 + c.
+ * Chaque voie effectue les mêmes opérations que le noyau scalaire, les indices sont donc identiques
+ */
+final class NoyauVectoriel extends Noyau {
+    /**
+     * l'espèce des vecteurs, 4 doubles en AVX2 et 8 en AVX-512
+     */
+    private static final VectorSpecies<Double> ESPECE = DoubleVector.SPECIES_PREFERRED;
+    /**
+     * les tableaux de travail de chaque thread, parties réelles et indices d'un vecteur de
+     * pixels, pour que ligne n'alloue rien
+     */
+    private static final ThreadLocal<double[][]> TRAVAIL =
+            ThreadLocal.withInitial(() -> new double[2][ESPECE.length()]);
+    /**
+     * true si la fractale est Mandelbrot, false si c'est un Julia z^2 + c
+     */
+    private final boolean mandelbrot;
+    /**
+     * la partie réelle de la constante du Julia
+     */
+    private final double cRe;
+    /**
+     * la partie imaginaire de la constante du Julia
+     */
+    private final double cIm;
+    /**
+     * le pas de discrétisation
+     */
+    private final double pas;
+    /**
+     * le maximum d'itération
+     */
+    private final int maxIter;
+    /**
+     * true si la détection des orbites périodiques est activée
+     */
+    private final boolean periodicite;
+    /**
+     * la tolérance de la détection des orbites périodiques
+     */
+    private final double tolerance;
+    /**
+     * le minimum de l'intervalle des réels
+     */
+    private final double minRe;
+    /**
+     * le maximum de l'intervalle des imaginaires
+     */
+    private final double maxIm;
+    /**
+     * le noyau scalaire pour les pixels isolés et les fins de ligne
+     */
+    private final NoyauScalaire scalaire;
+
+    /**
+     * Construit un noyau vectoriel
+     * @param fractale Mandelbrot ou un Julia quadratique
+     * @param configuration la configuration de l'image
+     */
+    NoyauVectoriel(Fractale fractale, Configuration configuration) {
+        this.mandelbrot = fractale instanceof Mandelbrot;
+        if (mandelbrot) {
+            cRe = 0;
+            cIm = 0;
+        }
+        else {
+            Julia julia = (Julia) fractale;
+            cRe = julia.getCoefRe()[0];
+            cIm = julia.getCoefIm()[0];
+        }
+        this.pas = configuration.getPas();
+        this.maxIter = configuration.getMaxIter();
+        this.periodicite = configuration.isPeriodicite();
+        this.tolerance = configuration.getTolerance();
+        this.minRe = configuration.getMinRe();
+        this.maxIm = configuration.getMaxIm();
+        this.scalaire = new NoyauScalaire(fractale, configuration);
+    }
+
+    /**
+     * @return true si le processeur traite au moins deux doubles par vecteur
+     */
+    static boolean utile() {
+        return ESPECE.length() >= 2;
+    }
+
+    @Override
+    int indice(int x, int y) {
+        return scalaire.indice(x, y);
+    }
+
+    @Override
+    long sonde(int x, int y) {
+        return scalaire.sonde(x, y);
+    }
+
+    @Override
+    void ligne(int y, int fromX, int toX, int ecart, int[] indices, int offset) {
+        int n = ESPECE.length();
+        double[][] travail = TRAVAIL.get();
+        double[] re = travail[0];
+        double[] compte = travail[1];
+        double im = maxIm - (pas * y);
+        int x = fromX;
+        for (; x + (n - 1) * ecart < toX; x += n * ecart) {
+            for (int k = 0; k < n; k++)
+                re[k] = minRe + (pas * (x + k * ecart));
+            iteration(DoubleVector.fromArray(ESPECE, re, 0), DoubleVector.broadcast(ESPECE, im))
+                    .intoArray(compte, 0);
+            for (int k = 0; k < n; k++)
+                indices[offset + x - fromX + k * ecart] = (int) compte[k];
+        }
+        for (; x < toX; x += ecart)
+            indices[offset + x - fromX] = scalaire.indice(x, y);
+    }
+
+    /**
+     * Itère les points d'un vecteur en parallèle, une voie s'arrêtant dès que son point diverge
+     * @param pRe les parties réelles des points
+     * @param pIm les parties imaginaires des points
+     * @return les indices de divergence des points
+     */
+    private DoubleVector iteration(DoubleVector pRe, DoubleVector pIm) {
+        DoubleVector zRe, zIm, cr, ci;
+        VectorMask<Double> convergent;
+        if (mandelbrot) {
+            zRe = DoubleVector.zero(ESPECE);
+            zIm = zRe;
+            cr = pRe;
+            ci = pIm;
+            // cardioïde principale et disque de période 2, comme Mandelbrot.interieur
+            DoubleVector y2 = pIm.mul(pIm);
+            DoubleVector x = pRe.sub(0.25);
+            DoubleVector q = x.mul(x).add(y2);
+            DoubleVector x1 = pRe.add(1);
+            convergent = q.mul(q.add(x)).compare(VectorOperators.LT, y2.mul(0.25))
+                    .or(x1.mul(x1).add(y2).compare(VectorOperators.LT, 0.0625));
+        }
+        else {
+            zRe = pRe;
+            zIm = pIm;
+            cr = DoubleVector.broadcast(ESPECE, cRe);
+            ci = DoubleVector.broadcast(ESPECE, cIm);
+            convergent = ESPECE.maskAll(false);
+        }
+        DoubleVector un = DoubleVector.broadcast(ESPECE, 1);
+        DoubleVector compte = DoubleVector.zero(ESPECE);
+        VectorMask<Double> actif = convergent.not()
+                .and(zRe.mul(zRe).add(zIm.mul(zIm)).compare(VectorOperators.LE, Fractale.BORNE));
+        DoubleVector sRe = zRe;
+        DoubleVector sIm = zIm;
+        int periode = 0;
+        int limite = 1;
+        for (int ite = 0; ite < maxIter && actif.anyTrue(); ite++) {
+            DoubleVector t = zRe.mul(zIm);
+            DoubleVector nRe = cr.add(zRe.mul(zRe).sub(zIm.mul(zIm)));
+            DoubleVector nIm = ci.add(t.add(t));
+            zRe = zRe.blend(nRe, actif);
+            zIm = zIm.blend(nIm, actif);
+            compte = compte.add(un, actif);
+            actif = actif.and(zRe.mul(zRe).add(zIm.mul(zIm)).compare(VectorOperators.LE, Fractale.BORNE));
+            if (periodicite) {
+                VectorMask<Double> cycle = actif
+                        .and(zRe.sub(sRe).abs().compare(VectorOperators.LE, tolerance))
+                        .and(zIm.sub(sIm).abs().compare(VectorOperators.LE, tolerance));
+                convergent = convergent.or(cycle);
+                actif = actif.andNot(cycle);
+                if (++periode == limite) {
+                    sRe = zRe;
+                    sIm = zIm;
+                    periode = 0;
+                    limite <<= 1;
+                }
+            }
+        }
+        return compte.blend(maxIter, convergent);
+    }
+}
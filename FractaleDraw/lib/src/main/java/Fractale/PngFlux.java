@@ -0,0 +1,478 @@
+package Fractale;
+
+
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.awt.image.SinglePixelPackedSampleModel;
+import java.awt.image.WritableRaster;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.zip.Adler32;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+
+/**
+ * Encodeur PNG qui écrit une image RGB ligne par ligne, sans jamais la garder entière en
+ * mémoire. Le filtre de chaque ligne est celui qui donne la plus petite somme des valeurs
+ * absolues. Les lignes filtrées sont découpées en morceaux compressés en parallèle, chacun
+ * amorcé avec les 32 Kio qui le précèdent comme dictionnaire, puis les morceaux sont mis bout
+ * à bout dans un seul flux zlib réparti dans des blocs IDAT. En mode en ligne, pour les petites
+ * images ou quand l'appelant est déjà une tâche du pool de calcul, les lignes filtrées sont
+ * compressées au fil de l'eau par un seul Deflater, sans passer par le pool
+ */
+class PngFlux implements Closeable {
+    /**
+     * la signature qui commence tout fichier PNG
+     */
+    private static final byte[] SIGNATURE = {(byte) 0x89, 'P', 'N', 'G', '\r', '\n', 0x1A, '\n'};
+    /**
+     * la taille maximale des données d'un bloc IDAT, en octets
+     */
+    private static final int TAILLE_IDAT = 1 << 16;
+    /**
+     * la taille minimale des données d'un morceau compressé séparément, en octets
+     */
+    private static final int TAILLE_MORCEAU = 1 << 17;
+    /**
+     * la taille du dictionnaire de DEFLATE, en octets
+     */
+    private static final int TAILLE_DICTIONNAIRE = 1 << 15;
+    /**
+     * le flux du fichier
+     */
+    private final DataOutputStream sortie;
+    /**
+     * la longueur de l'image
+     */
+    private final int longueur;
+    /**
+     * la largeur de l'image
+     */
+    private final int largeur;
+    /**
+     * le niveau de compression, de 0 à 9 ou -1 pour le niveau par défaut
+     */
+    private final int niveau;
+    /**
+     * le pool qui compresse les morceaux, null en mode en ligne
+     */
+    private final ForkJoinPool pool;
+    /**
+     * le compresseur unique du mode en ligne, null si les morceaux sont compressés en parallèle
+     */
+    private final Deflater enLigne;
+    /**
+     * les données compressées par le Deflater du mode en ligne, avant d'être écrites
+     */
+    private final byte[] compressees;
+    /**
+     * les compressions de morceaux pas encore écrites, dans l'ordre de l'image
+     */
+    private final ArrayDeque<Future<byte[]>> enCours = new ArrayDeque<>();
+    /**
+     * les blocs IDAT du flux zlib
+     */
+    private final Idat idat = new Idat();
+    /**
+     * la somme de contrôle Adler-32 des lignes filtrées, qui termine le flux zlib
+     */
+    private final Adler32 adler = new Adler32();
+    /**
+     * la ligne précédente non filtrée, nulle avant la première ligne
+     */
+    private byte[] precedente;
+    /**
+     * la ligne courante non filtrée
+     */
+    private byte[] courante;
+    /**
+     * les cinq filtrages possibles de la ligne courante, l'octet du filtre compris
+     */
+    private final byte[][] filtrees = new byte[5][];
+    /**
+     * le morceau en cours de remplissage, null en mode en ligne
+     */
+    private final byte[] morceau;
+    /**
+     * le nombre d'octets du morceau en cours
+     */
+    private int taille;
+    /**
+     * la fin des données déjà confiées aux compressions, dictionnaire du morceau suivant
+     */
+    private byte[] dictionnaire = new byte[0];
+    /**
+     * le nombre de lignes déjà écrites
+     */
+    private int lignes;
+
+    /**
+     * Écrit l'en-tête d'un PNG RGB 8 bits compressé au niveau par défaut
+     * @param out le flux du fichier, qui n'est pas fermé par close
+     * @param longueur la longueur de l'image
+     * @param largeur la largeur de l'image
+     * @throws IOException si l'en-tête ne peut pas être écrit
+     */
+    PngFlux(OutputStream out, int longueur, int largeur) throws IOException {
+        this(out, longueur, largeur, Deflater.DEFAULT_COMPRESSION);
+    }
+
+    /**
+     * Écrit l'en-tête d'un PNG RGB 8 bits, compressé en ligne si ses lignes filtrées tiennent
+     * dans un seul morceau
+     * @param out le flux du fichier, qui n'est pas fermé par close
+     * @param longueur la longueur de l'image
+     * @param largeur la largeur de l'image
+     * @param niveau le niveau de compression, de 0 à 9 ou -1 pour le niveau par défaut
+     * @throws IOException si l'en-tête ne peut pas être écrit
+     */
+    PngFlux(OutputStream out, int longueur, int largeur, int niveau) throws IOException {
+        this(out, longueur, largeur, niveau, (3L * longueur + 1) * largeur <= TAILLE_MORCEAU);
+    }
+
+    /**
+     * Écrit l'en-tête d'un PNG RGB 8 bits
+     * @param out le flux du fichier, qui n'est pas fermé par close
+     * @param longueur la longueur de l'image
+     * @param largeur la largeur de l'image
+     * @param niveau le niveau de compression, de 0 à 9 ou -1 pour le niveau par défaut
+     * @param enLigne true pour compresser les lignes au fil de l'eau avec un seul Deflater,
+     * sans le pool de calcul, false pour compresser les morceaux en parallèle
+     * @throws IOException si l'en-tête ne peut pas être écrit
+     */
+    PngFlux(OutputStream out, int longueur, int largeur, int niveau, boolean enLigne) throws IOException {
+        if (longueur <= 0 || largeur <= 0 || longueur > (Integer.MAX_VALUE - 1) / 3)
+            throw new IllegalArgumentException("taille d'image PNG invalide");
+        if (niveau < -1 || niveau > 9)
+            throw new IllegalArgumentException("le niveau de compression doit être entre 0 et 9");
+        this.sortie = new DataOutputStream(out);
+        this.longueur = longueur;
+        this.largeur = largeur;
+        this.niveau = niveau;
+        this.pool = enLigne ? null : FractaleImage.pool();
+        this.enLigne = enLigne ? new Deflater(niveau, true) : null;
+        this.compressees = enLigne ? new byte[TAILLE_IDAT] : null;
+        this.courante = new byte[3 * longueur];
+        for (int f = 0; f < filtrees.length; f++)
+            filtrees[f] = new byte[1 + 3 * longueur];
+        this.morceau = enLigne ? null : new byte[TAILLE_MORCEAU + 1 + 3 * longueur];
+        sortie.write(SIGNATURE);
+        byte[] entete = new byte[13];
+        ecritEntier(entete, 0, longueur);
+        ecritEntier(entete, 4, largeur);
+        entete[8] = 8;  // 8 bits par composante
+        entete[9] = 2;  // RGB
+        bloc("IHDR", entete, entete.length);
+        // en-tête zlib : DEFLATE, fenêtre de 32 Kio et niveau indicatif
+        int flevel = niveau < 0 || niveau == 6 ? 2 : niveau < 2 ? 0 : niveau < 6 ? 1 : 3;
+        int flg = flevel << 6;
+        flg += 31 - (0x7800 + flg) % 31;
+        idat.write(0x78);
+        idat.write(flg);
+    }
+
+    /**
+     * Écrit toutes les lignes d'une bande de l'image. Les pixels d'une bande RGB sont lus
+     * directement dans son tableau, même si elle est une sous-image d'une image plus grande
+     * @param bande la bande, de la longueur de l'image
+     * @throws IOException si les lignes ne peuvent pas être écrites
+     */
+    void ecrit(BufferedImage bande) throws IOException {
+        if (bande.getWidth() != longueur)
+            throw new IllegalArgumentException("la bande n'a pas la longueur de l'image");
+        WritableRaster raster = bande.getRaster();
+        if (bande.getType() == BufferedImage.TYPE_INT_RGB && raster.getSampleModel() instanceof SinglePixelPackedSampleModel) {
+            SinglePixelPackedSampleModel modele = (SinglePixelPackedSampleModel) raster.getSampleModel();
+            DataBufferInt donnees = (DataBufferInt) raster.getDataBuffer();
+            int[] pixels = donnees.getData();
+            // la position du pixel (0, 0) de la bande dans le tableau
+            int debut = donnees.getOffset()
+                    + modele.getOffset(-raster.getSampleModelTranslateX(), -raster.getSampleModelTranslateY());
+            for (int y = 0; y < bande.getHeight(); y++)
+                ecrit(pixels, debut + y * modele.getScanlineStride());
+        }
+        else {
+            int[] pixels = new int[longueur];
+            for (int y = 0; y < bande.getHeight(); y++)
+                ecrit(bande.getRGB(0, y, longueur, 1, pixels, 0, longueur), 0);
+        }
+    }
+
+    /**
+     * Écrit la ligne suivante de l'image
+     * @param pixels des pixels RGB
+     * @param offset la position du premier pixel de la ligne dans pixels
+     * @throws IOException si la ligne ne peut pas être écrite
+     */
+    void ecrit(int[] pixels, int offset) throws IOException {
+        if (lignes == largeur)
+            throw new IllegalStateException("toutes les lignes de l'image ont été écrites");
+        for (int x = 0; x < longueur; x++) {
+            int p = pixels[offset + x];
+            courante[3 * x] = (byte) (p >> 16);
+            courante[3 * x + 1] = (byte) (p >> 8);
+            courante[3 * x + 2] = (byte) p;
+        }
+        byte[] filtree = filtre();
+        adler.update(filtree);
+        if (enLigne != null) {
+            enLigne.setInput(filtree);
+            // la ligne filtrée est réutilisée : elle doit être entièrement consommée
+            while (!enLigne.needsInput())
+                draine();
+        }
+        else {
+            System.arraycopy(filtree, 0, morceau, taille, filtree.length);
+            taille += filtree.length;
+        }
+        byte[] t = precedente == null ? new byte[courante.length] : precedente;
+        precedente = courante;
+        courante = t;
+        lignes++;
+        if (taille >= TAILLE_MORCEAU)
+            compresse(false);
+    }
+
+    /**
+     * Écrit dans les blocs IDAT ce que le Deflater du mode en ligne a déjà compressé
+     * @throws IOException si les données ne peuvent pas être écrites
+     */
+    private void draine() throws IOException {
+        int n = enLigne.deflate(compressees);
+        idat.write(compressees, 0, n);
+    }
+
+    /**
+     * Filtre la ligne courante avec chacun des cinq filtres du PNG
+     * @return la ligne filtrée dont la somme des valeurs absolues des octets est la plus petite
+     */
+    private byte[] filtre() {
+        int n = courante.length;
+        long[] sommes = new long[5];
+        for (int i = 0; i < n; i++) {
+            int c = courante[i] & 0xFF;
+            int a = i >= 3 ? courante[i - 3] & 0xFF : 0;
+            int b = precedente != null ? precedente[i] & 0xFF : 0;
+            int d = i >= 3 && precedente != null ? precedente[i - 3] & 0xFF : 0;
+            // None, Sub, Up, Average et Paeth
+            byte v0 = (byte) c;
+            byte v1 = (byte) (c - a);
+            byte v2 = (byte) (c - b);
+            byte v3 = (byte) (c - ((a + b) >> 1));
+            byte v4 = (byte) (c - paeth(a, b, d));
+            filtrees[0][i + 1] = v0;
+            filtrees[1][i + 1] = v1;
+            filtrees[2][i + 1] = v2;
+            filtrees[3][i + 1] = v3;
+            filtrees[4][i + 1] = v4;
+            sommes[0] += Math.abs(v0);
+            sommes[1] += Math.abs(v1);
+            sommes[2] += Math.abs(v2);
+            sommes[3] += Math.abs(v3);
+            sommes[4] += Math.abs(v4);
+        }
+        int meilleur = 0;
+        for (int f = 1; f < 5; f++)
+            if (sommes[f] < sommes[meilleur])
+                meilleur = f;
+        filtrees[meilleur][0] = (byte) meilleur;
+        return filtrees[meilleur];
+    }
+
+    /**
+     * @param a la composante du pixel de gauche
+     * @param b la composante du pixel du dessus
+     * @param c la composante du pixel en haut à gauche
+     * @return le prédicteur de Paeth : celle des trois composantes la plus proche de a + b - c
+     */
+    private static int paeth(int a, int b, int c) {
+        int p = a + b - c;
+        int pa = Math.abs(p - a);
+        int pb = Math.abs(p - b);
+        int pc = Math.abs(p - c);
+        if (pa <= pb && pa <= pc)
+            return a;
+        return pb <= pc ? b : c;
+    }
+
+    /**
+     * Confie le morceau en cours à une compression en parallèle, puis écrit les morceaux
+     * compressés qui précèdent tant que trop de compressions sont en cours
+     * @param dernier true si c'est le dernier morceau de l'image
+     * @throws IOException si un morceau ne peut pas être écrit
+     */
+    private void compresse(boolean dernier) throws IOException {
+        byte[] donnees = Arrays.copyOf(morceau, taille);
+        byte[] dico = dictionnaire;
+        enCours.add(pool.submit(() -> deflate(donnees, dico, dernier)));
+        int debut = Math.max(0, taille - TAILLE_DICTIONNAIRE);
+        dictionnaire = Arrays.copyOfRange(morceau, debut, taille);
+        taille = 0;
+        // pour borner la mémoire, pas plus de deux morceaux par thread en attente
+        while (enCours.size() > 2 * pool.getParallelism() || (dernier && !enCours.isEmpty()))
+            idat.write(attend(enCours.poll()));
+    }
+
+    /**
+     * Compresse un morceau en DEFLATE brut
+     * @param donnees les données du morceau
+     * @param dico les données qui le précèdent, dictionnaire de la compression
+     * @param dernier true pour terminer le flux DEFLATE, false pour finir sur une limite d'octet
+     * @return le morceau compressé
+     */
+    private byte[] deflate(byte[] donnees, byte[] dico, boolean dernier) {
+        Deflater deflater = new Deflater(niveau, true);
+        try {
+            if (dico.length > 0)
+                deflater.setDictionary(dico);
+            deflater.setInput(donnees);
+            if (dernier)
+                deflater.finish();
+            ByteArrayOutputStream res = new ByteArrayOutputStream(donnees.length / 2 + 64);
+            byte[] tampon = new byte[TAILLE_IDAT];
+            int n;
+            do {
+                n = deflater.deflate(tampon, 0, tampon.length, dernier ? Deflater.NO_FLUSH : Deflater.SYNC_FLUSH);
+                res.write(tampon, 0, n);
+            } while (dernier ? !deflater.finished() : n == tampon.length);
+            return res.toByteArray();
+        } finally {
+            deflater.end();
+        }
+    }
+
+    /**
+     * @param compression la compression d'un morceau
+     * @return le morceau compressé
+     * @throws IOException si la compression a échoué ou a été interrompue
+     */
+    private static byte[] attend(Future<byte[]> compression) throws IOException {
+        try {
+            return compression.get();
+        } catch (ExecutionException e) {
+            throw new IOException(e.getCause());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("compression interrompue", e);
+        }
+    }
+
+    /**
+     * Termine la compression et écrit la fin du fichier
+     * @throws IOException si l'image n'est pas complète ou ne peut pas être écrite
+     */
+    @Override
+    public void close() throws IOException {
+        if (lignes != largeur) {
+            enCours.forEach(f -> f.cancel(false));
+            if (enLigne != null)
+                enLigne.end();
+            throw new IOException("image PNG incomplète : " + lignes + " lignes sur " + largeur);
+        }
+        if (enLigne != null) {
+            try {
+                enLigne.finish();
+                while (!enLigne.finished())
+                    draine();
+            } finally {
+                enLigne.end();
+            }
+        }
+        else
+            compresse(true);
+        byte[] somme = new byte[4];
+        ecritEntier(somme, 0, (int) adler.getValue());
+        idat.write(somme);
+        idat.close();
+        bloc("IEND", new byte[0], 0);
+        sortie.flush();
+    }
+
+    /**
+     * Écrit un bloc PNG : sa longueur, son type, ses données et leur CRC
+     * @param type le type du bloc
+     * @param donnees les données du bloc
+     * @param n le nombre d'octets de données
+     * @throws IOException si le bloc ne peut pas être écrit
+     */
+    private void bloc(String type, byte[] donnees, int n) throws IOException {
+        byte[] t = type.getBytes(StandardCharsets.US_ASCII);
+        CRC32 crc = new CRC32();
+        crc.update(t);
+        crc.update(donnees, 0, n);
+        sortie.writeInt(n);
+        sortie.write(t);
+        sortie.write(donnees, 0, n);
+        sortie.writeInt((int) crc.getValue());
+    }
+
+    /**
+     * @param tableau le tableau qui reçoit l'entier
+     * @param position la position du premier octet
+     * @param valeur l'entier, écrit en gros-boutiste
+     */
+    private static void ecritEntier(byte[] tableau, int position, int valeur) {
+        tableau[position] = (byte) (valeur >>> 24);
+        tableau[position + 1] = (byte) (valeur >>> 16);
+        tableau[position + 2] = (byte) (valeur >>> 8);
+        tableau[position + 3] = (byte) valeur;
+    }
+
+    /**
+     * Flux qui regroupe les données compressées en blocs IDAT d'au plus TAILLE_IDAT octets
+     */
+    private class Idat extends OutputStream {
+        /**
+         * les données du bloc en cours
+         */
+        private final byte[] tampon = new byte[TAILLE_IDAT];
+        /**
+         * le nombre d'octets du bloc en cours
+         */
+        private int n;
+
+        @Override
+        public void write(int b) throws IOException {
+            if (n == tampon.length)
+                vide();
+            tampon[n++] = (byte) b;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            while (len > 0) {
+                if (n == tampon.length)
+                    vide();
+                int k = Math.min(len, tampon.length - n);
+                System.arraycopy(b, off, tampon, n, k);
+                n += k;
+                off += k;
+                len -= k;
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            vide();
+        }
+
+        /**
+         * Écrit le bloc en cours s'il n'est pas vide
+         * @throws IOException si le bloc ne peut pas être écrit
+         */
+        private void vide() throws IOException {
+            if (n > 0)
+                bloc("IDAT", tampon, n);
+            n = 0;
+        }
+    }
+}
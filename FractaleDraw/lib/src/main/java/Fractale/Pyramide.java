@@ -0,0 +1,320 @@
+package Fractale;
+
+
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Classe qui écrit l'image d'une FractaleImage en pyramide de tuiles PNG de TUILE pixels de
+ * côté, rangées en dossier/z/x/y.png : le niveau z le plus grand est l'image elle-même, et
+ * chaque niveau inférieur est l'image du niveau au-dessus réduite de moitié, le niveau 0 tenant
+ * dans une seule tuile. Les tuiles du bord sont coupées à la taille de l'image.
+ * L'image est calculée par bandes et chaque niveau ne garde qu'une rangée de tuiles en
+ * mémoire : une rangée pleine est écrite puis réduite pour remplir la rangée du niveau inférieur
+ */
+class Pyramide {
+    /**
+     * le côté d'une tuile, en pixels
+     */
+    static final int TUILE = 256;
+    /**
+     * le nombre approximatif de pixels d'une bande calculée
+     */
+    private static final long PIXELS_BANDE = 1L << 22;
+
+    /**
+     * Classe utilitaire, non instanciable
+     */
+    private Pyramide() {
+    }
+
+    /**
+     * Calcule l'image d'une FractaleImage par bandes et écrit toutes ses tuiles dans un dossier,
+     * chaque bande étant découpée et réduite pendant le calcul de la suivante
+     * @param dossier le dossier des tuiles
+     * @param modele le modèle, dont les indices de divergence déjà connus sont seulement coloriés
+     * @throws IOException si une tuile ne peut pas être écrite ou si le calcul a été interrompu
+     */
+    static void execute(String dossier, FractaleImage modele) throws IOException {
+        Configuration config = modele.getConfiguration();
+        int longueur = config.getLongueur();
+        int largeur = config.getLargeur();
+        int zoom = 0;
+        while ((long) TUILE << zoom < Math.max(longueur, largeur))
+            zoom++;
+        Niveau base = new Niveau(Paths.get(dossier), zoom, longueur, largeur);
+        // des bandes d'un nombre entier de rangées de tuiles
+        int hauteur = (int) Math.min(largeur, TUILE * Math.max(1, PIXELS_BANDE / ((long) longueur * TUILE)));
+        ExecutorService decoupe = Executors.newSingleThreadExecutor();
+        long debut = System.nanoTime();
+        try {
+            Future<?> precedente = null;
+            for (int y = 0; y < largeur; y += hauteur) {
+                FractaleImage bande = modele.bande(y, Math.min(hauteur, largeur - y));
+                if (!bande.colorie())
+                    bande.calculImage();
+                BufferedImage image = bande.getImage();
+                if (image == null)
+                    throw new IOException("le calcul de l'image a été interrompu");
+                int[] pixels = ((DataBufferInt) image.getRaster().getDataBuffer()).getData();
+                SaveImage.attend(precedente);
+                precedente = decoupe.submit(() -> {
+                    base.ajoute(pixels, 0, image.getHeight());
+                    return null;
+                });
+            }
+            SaveImage.attend(precedente);
+        } finally {
+            decoupe.shutdown();
+        }
+        System.out.println((zoom + 1) + " niveaux de tuiles dans " + dossier + ", "
+                + (System.nanoTime() - debut) / 1_000_000 + " ms");
+    }
+
+    /**
+     * Un niveau de la pyramide et sa rangée de tuiles en cours de remplissage
+     */
+    private static class Niveau {
+        /**
+         * le dossier de la pyramide
+         */
+        private final Path dossier;
+        /**
+         * le numéro du niveau, 0 pour le niveau d'une seule tuile
+         */
+        private final int zoom;
+        /**
+         * la longueur de l'image à ce niveau
+         */
+        private final int longueur;
+        /**
+         * la largeur de l'image à ce niveau
+         */
+        private final int largeur;
+        /**
+         * les pixels de la rangée de tuiles en cours, ligne par ligne
+         */
+        private final int[] rangee;
+        /**
+         * le nombre de lignes déjà dans la rangée en cours
+         */
+        private int lignes;
+        /**
+         * la ligne de l'image où commence la rangée en cours
+         */
+        private int debut;
+        /**
+         * le niveau inférieur, null pour le niveau 0
+         */
+        private final Niveau inferieur;
+
+        /**
+         * @param dossier le dossier de la pyramide
+         * @param zoom le numéro du niveau
+         * @param longueur la longueur de l'image à ce niveau
+         * @param largeur la largeur de l'image à ce niveau
+         */
+        private Niveau(Path dossier, int zoom, int longueur, int largeur) {
+            this.dossier = dossier;
+            this.zoom = zoom;
+            this.longueur = longueur;
+            this.largeur = largeur;
+            this.rangee = new int[longueur * Math.min(TUILE, largeur)];
+            this.inferieur = zoom == 0 ? null : new Niveau(dossier, zoom - 1, (longueur + 1) / 2, (largeur + 1) / 2);
+        }
+
+        /**
+         * Ajoute les lignes suivantes de l'image à ce niveau, en écrivant et réduisant chaque
+         * rangée de tuiles dès qu'elle est pleine
+         * @param pixels les pixels des lignes, ligne par ligne
+         * @param offset la position du premier pixel dans pixels
+         * @param n le nombre de lignes
+         * @throws IOException si une tuile ne peut pas être écrite
+         */
+        private void ajoute(int[] pixels, int offset, int n) throws IOException {
+            while (n > 0) {
+                int k = Math.min(n, TUILE - lignes);
+                System.arraycopy(pixels, offset, rangee, lignes * longueur, k * longueur);
+                lignes += k;
+                offset += k * longueur;
+                n -= k;
+                if (lignes == TUILE || debut + lignes == largeur)
+                    vide();
+            }
+        }
+
+        /**
+         * Écrit les tuiles de la rangée en cours en parallèle, puis transmet au niveau
+         * inférieur la rangée réduite de moitié
+         * @throws IOException si une tuile ne peut pas être écrite
+         */
+        private void vide() throws IOException {
+            ForkJoinPool pool = FractaleImage.pool();
+            try {
+                pool.invoke(new Ecriture(this, 0, (longueur + TUILE - 1) / TUILE));
+            } catch (UncheckedIOException e) {
+                throw e.getCause();
+            }
+            if (inferieur != null) {
+                int hauteur = (lignes + 1) / 2;
+                int[] reduite = new int[inferieur.longueur * hauteur];
+                pool.invoke(new Reduction(this, reduite, 0, hauteur));
+                inferieur.ajoute(reduite, 0, hauteur);
+            }
+            debut += lignes;
+            lignes = 0;
+        }
+
+        /**
+         * Écrit une tuile de la rangée en cours
+         * @param x la colonne de la tuile
+         * @throws IOException si la tuile ne peut pas être écrite
+         */
+        private void ecritTuile(int x) throws IOException {
+            Path colonne = dossier.resolve(Integer.toString(zoom)).resolve(Integer.toString(x));
+            Files.createDirectories(colonne);
+            int x0 = x * TUILE;
+            int l = Math.min(TUILE, longueur - x0);
+            try (OutputStream out = new BufferedOutputStream(Files.newOutputStream(
+                    colonne.resolve(debut / TUILE + ".png")));
+                    // compressée en ligne : cette tâche du pool ne doit pas attendre d'autres tâches du pool
+                    PngFlux png = new PngFlux(out, l, lignes, SaveImage.getCompression(), true)) {
+                for (int y = 0; y < lignes; y++)
+                    png.ecrit(rangee, y * longueur + x0);
+            }
+        }
+    }
+
+    /**
+     * Classe qui écrit en parallèle un intervalle de tuiles de la rangée en cours d'un niveau
+     */
+    private static class Ecriture extends RecursiveAction {
+        /**
+         * le niveau des tuiles
+         */
+        private final Niveau niveau;
+        /**
+         * la colonne de la première tuile
+         */
+        private final int from;
+        /**
+         * la colonne qui suit la dernière tuile
+         */
+        private final int to;
+
+        /**
+         * @param niveau le niveau des tuiles
+         * @param from la colonne de la première tuile
+         * @param to la colonne qui suit la dernière tuile
+         */
+        private Ecriture(Niveau niveau, int from, int to) {
+            this.niveau = niveau;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from <= 1) {
+                for (int x = from; x < to; x++) {
+                    try {
+                        niveau.ecritTuile(x);
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                }
+            }
+            else {
+                int middle = (from + to) / 2;
+                invokeAll(new Ecriture(niveau, from, middle), new Ecriture(niveau, middle, to));
+            }
+        }
+    }
+
+    /**
+     * Classe qui réduit en parallèle un intervalle de lignes de la rangée en cours d'un niveau :
+     * chaque pixel réduit est la moyenne d'un carré de 2 × 2 pixels, coupé au bord de l'image
+     */
+    private static class Reduction extends RecursiveAction {
+        /**
+         * le niveau réduit
+         */
+        private final Niveau niveau;
+        /**
+         * les pixels de la rangée réduite, ligne par ligne
+         */
+        private final int[] reduite;
+        /**
+         * la première ligne réduite à calculer
+         */
+        private final int from;
+        /**
+         * la ligne qui suit la dernière ligne réduite à calculer
+         */
+        private final int to;
+
+        /**
+         * @param niveau le niveau réduit
+         * @param reduite les pixels de la rangée réduite
+         * @param from la première ligne réduite à calculer
+         * @param to la ligne qui suit la dernière ligne réduite à calculer
+         */
+        private Reduction(Niveau niveau, int[] reduite, int from, int to) {
+            this.niveau = niveau;
+            this.reduite = reduite;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from <= 16) {
+                int longueur = niveau.longueur;
+                int[] rangee = niveau.rangee;
+                int l = (longueur + 1) / 2;
+                for (int y = from; y < to; y++) {
+                    int haut = 2 * y * longueur;
+                    int bas = Math.min(2 * y + 1, niveau.lignes - 1) * longueur;
+                    for (int x = 0; x < l; x++) {
+                        int g = 2 * x;
+                        int d = Math.min(2 * x + 1, longueur - 1);
+                        reduite[y * l + x] = moyenne(rangee[haut + g], rangee[haut + d], rangee[bas + g], rangee[bas + d]);
+                    }
+                }
+            }
+            else {
+                int middle = (from + to) / 2;
+                invokeAll(new Reduction(niveau, reduite, from, middle), new Reduction(niveau, reduite, middle, to));
+            }
+        }
+
+        /**
+         * @param a la couleur en haut à gauche
+         * @param b la couleur en haut à droite
+         * @param c la couleur en bas à gauche
+         * @param d la couleur en bas à droite
+         * @return la moyenne arrondie des quatre couleurs RGB, composante par composante
+         */
+        private static int moyenne(int a, int b, int c, int d) {
+            int res = 0;
+            for (int decalage = 0; decalage <= 16; decalage += 8) {
+                int somme = ((a >> decalage) & 0xFF) + ((b >> decalage) & 0xFF)
+                        + ((c >> decalage) & 0xFF) + ((d >> decalage) & 0xFF);
+                res |= ((somme + 2) >> 2) << decalage;
+            }
+            return res;
+        }
+    }
+}
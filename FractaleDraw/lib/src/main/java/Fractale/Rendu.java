@@ -0,0 +1,331 @@
+package Fractale;
+
+
+import java.math.BigDecimal;
+import java.math.MathContext;
+import java.math.RoundingMode;
+
+/**
+ * Indices de divergence d'une image déjà calculée, gardés pour être réutilisés par
+ * l'image suivante quand les pixels des deux images coïncident
+ */
+class Rendu {
+    /**
+     * l'écart relatif toléré entre deux positions qui doivent coïncider,
+     * pour absorber les erreurs d'arrondi des pas en double
+     */
+    private static final double TOLERANCE = 1e-6;
+    /**
+     * le plus grand rapport de pas pour lequel les pixels sont réutilisés
+     */
+    private static final int MAX_RAPPORT = 1 << 10;
+    /**
+     * la fractale de l'image
+     */
+    private final Fractale fractale;
+    /**
+     * la configuration de l'image
+     */
+    private final Configuration configuration;
+    /**
+     * les indices de divergence de l'image, ligne par ligne
+     */
+    private final Indices indices;
+    /**
+     * l'état des orbites des pixels qui ont atteint maxIter, ou null s'il n'est pas gardé
+     */
+    private final Orbites orbites;
+
+    /**
+     * Construit un rendu à partir d'une image calculée
+     * @param fractale la fractale de l'image
+     * @param configuration la configuration de l'image, qui ne doit plus être modifiée
+     * @param indices les indices de divergence de l'image
+     */
+    Rendu(Fractale fractale, Configuration configuration, Indices indices) {
+        this(fractale, configuration, indices, null);
+    }
+
+    /**
+     * Construit un rendu à partir d'une image calculée et de l'état des orbites de ses pixels
+     * qui ont atteint maxIter
+     * @param fractale la fractale de l'image
+     * @param configuration la configuration de l'image, qui ne doit plus être modifiée
+     * @param indices les indices de divergence de l'image
+     * @param orbites l'état des orbites des pixels qui ont atteint maxIter, ou null
+     */
+    Rendu(Fractale fractale, Configuration configuration, Indices indices, Orbites orbites) {
+        this.fractale = fractale;
+        this.configuration = configuration;
+        this.indices = indices;
+        this.orbites = orbites;
+    }
+
+    /**
+     * Copie les indices des pixels de ce rendu qui coïncident avec les pixels d'une autre image.
+     * Les deux images doivent avoir la même fractale et les mêmes paramètres de calcul, l'un des
+     * pas doit être un multiple entier k de l'autre et les grilles doivent être alignées : chaque
+     * pixel de l'image au grand pas coïncide alors avec un pixel sur k de l'image au petit pas.
+     * Les indices approchés d'un rendu calculé par subdivision ne sont copiés que dans une autre
+     * image calculée par subdivision
+     * @param fractale la fractale de l'autre image
+     * @param configuration la configuration de l'autre image
+     * @param indices les indices de divergence de l'autre image, qui reçoivent les indices copiés
+     * @return le nombre de pixels copiés
+     */
+    int copie(Fractale fractale, Configuration configuration, int[] indices) {
+        Configuration c = this.configuration;
+        if (c.getMaxIter() != configuration.getMaxIter() || c.isPeriodicite() != configuration.isPeriodicite()
+                || !this.fractale.equals(fractale) || !reutilisable(configuration))
+            return 0;
+        int k = rapport(configuration);
+        if (k == 0)
+            return 0;
+        // ce rendu est-il l'image au petit pas ?
+        boolean fin = c.getPas() <= configuration.getPas();
+        Configuration cFin = fin ? c : configuration;
+        Configuration cGros = fin ? configuration : c;
+        BigDecimal pasFin = BigDecimal.valueOf(cFin.getPas());
+        // le pixel (x, y) de l'image au grand pas est le pixel (dx + k * x, dy + k * y) de l'autre
+        Long dx = decalage(cGros.getMinReExact().subtract(cFin.getMinReExact()), pasFin);
+        Long dy = decalage(cFin.getMaxImExact().subtract(cGros.getMaxImExact()), pasFin);
+        if (dx == null || dy == null)
+            return 0;
+        int longueurFin = cFin.getLongueur();
+        int longueurGros = cGros.getLongueur();
+        // les pixels de l'image au grand pas dont le pixel correspondant est dans l'autre image
+        int fromX = (int) Math.max(0, Math.floorDiv(-dx + k - 1, k));
+        int toX = (int) Math.min(longueurGros, Math.floorDiv(longueurFin - 1 - dx, k) + 1);
+        int fromY = (int) Math.max(0, Math.floorDiv(-dy + k - 1, k));
+        int toY = (int) Math.min(cGros.getLargeur(), Math.floorDiv(cFin.getLargeur() - 1 - dy, k) + 1);
+        if (fromX >= toX || fromY >= toY)
+            return 0;
+        for (int y = fromY; y < toY; y++) {
+            int gros = y * longueurGros;
+            int petit = (int) ((dy + (long) k * y) * longueurFin + dx);
+            for (int x = fromX; x < toX; x++) {
+                if (fin)
+                    indices[gros + x] = this.indices.get(petit + k * x);
+                else
+                    indices[petit + k * x] = this.indices.get(gros + x);
+            }
+        }
+        return (toX - fromX) * (toY - fromY);
+    }
+
+    /**
+     * @return les indices de divergence de l'image
+     */
+    Indices getIndices() {
+        return indices;
+    }
+
+    /**
+     * @return le nombre maximum d'itération de l'image
+     */
+    int getMaxIter() {
+        return configuration.getMaxIter();
+    }
+
+    /**
+     * @return l'état des orbites des pixels qui ont atteint maxIter, ou null s'il n'est pas gardé
+     */
+    Orbites getOrbites() {
+        return orbites;
+    }
+
+    /**
+     * @param fractale la fractale d'une autre image
+     * @param configuration la configuration d'une autre image
+     * @return true si l'autre image a les mêmes indices de divergence que ce rendu, c'est-à-dire
+     * la même fractale, le même plan complexe et les mêmes paramètres de calcul ; seules les
+     * couleurs peuvent différer
+     */
+    boolean meme(Fractale fractale, Configuration configuration) {
+        return memesPixels(fractale, configuration) && this.configuration.getMaxIter() == configuration.getMaxIter();
+    }
+
+    /**
+     * @param fractale la fractale d'une autre image
+     * @param configuration la configuration d'une autre image
+     * @return true si l'autre image ne diffère de ce rendu que par un maxIter plus grand
+     * (et éventuellement les couleurs) : l'itération des pixels qui ont atteint maxIter
+     * peut alors être reprise
+     */
+    boolean prolonge(Fractale fractale, Configuration configuration) {
+        return memesPixels(fractale, configuration) && this.configuration.getMaxIter() < configuration.getMaxIter();
+    }
+
+    /**
+     * @param fractale la fractale d'une autre image
+     * @param configuration la configuration d'une autre image
+     * @return true si l'autre image a la même fractale, les mêmes pixels et la même détection
+     * des orbites périodiques que ce rendu, et si les indices de ce rendu lui conviennent
+     */
+    private boolean memesPixels(Fractale fractale, Configuration configuration) {
+        Configuration c = this.configuration;
+        return this.fractale.equals(fractale) && reutilisable(configuration) && c.getPas() == configuration.getPas()
+                && c.isPeriodicite() == configuration.isPeriodicite()
+                && c.getLongueur() == configuration.getLongueur() && c.getLargeur() == configuration.getLargeur()
+                && c.getMinReExact().compareTo(configuration.getMinReExact()) == 0
+                && c.getMaxImExact().compareTo(configuration.getMaxImExact()) == 0;
+    }
+
+    /**
+     * Déplace le plan complexe d'une configuration de moins d'un pixel pour que ses pixels
+     * coïncident avec ceux de ce rendu, quand l'un des pas est un multiple entier de l'autre
+     * @param configuration la configuration à aligner
+     */
+    void aligne(Configuration configuration) {
+        Configuration c = this.configuration;
+        int k = rapport(configuration);
+        if (k == 0)
+            return;
+        boolean fin = c.getPas() <= configuration.getPas();
+        Configuration cFin = fin ? c : configuration;
+        Configuration cGros = fin ? configuration : c;
+        BigDecimal pasFin = BigDecimal.valueOf(cFin.getPas());
+        BigDecimal dx = arrondi(cGros.getMinReExact().subtract(cFin.getMinReExact()), pasFin).multiply(pasFin);
+        BigDecimal dy = arrondi(cFin.getMaxImExact().subtract(cGros.getMaxImExact()), pasFin).multiply(pasFin);
+        if (fin) {
+            configuration.updateMinRe(c.getMinReExact().add(dx));
+            configuration.updateMaxIm(c.getMaxImExact().subtract(dy));
+        }
+        else {
+            configuration.updateMinRe(c.getMinReExact().subtract(dx));
+            configuration.updateMaxIm(c.getMaxImExact().add(dy));
+        }
+    }
+
+    /**
+     * @param configuration la configuration d'une autre image
+     * @return true si les indices de ce rendu peuvent servir à l'autre image : les indices
+     * exacts servent à toutes les images, mais ceux d'un rendu calculé par subdivision, où
+     * l'intérieur des rectangles uniformes n'est pas calculé, ne servent qu'aux images
+     * calculées aussi par subdivision
+     */
+    private boolean reutilisable(Configuration configuration) {
+        return !this.configuration.isSubdivision() || configuration.isSubdivision();
+    }
+
+    /**
+     * @param configuration la configuration d'une autre image
+     * @return le rapport entier entre le plus grand et le plus petit des pas de ce rendu et de
+     * l'autre image, ou 0 s'il n'est pas entier
+     */
+    private int rapport(Configuration configuration) {
+        double a = this.configuration.getPas();
+        double b = configuration.getPas();
+        double r = Math.max(a, b) / Math.min(a, b);
+        long k = Math.round(r);
+        if (k > MAX_RAPPORT || Math.abs(r - k) > TOLERANCE * r)
+            return 0;
+        return (int) k;
+    }
+
+    /**
+     * @param distance une distance dans le plan complexe
+     * @param pas le pas de discrétisation
+     * @return l'entier le plus proche de distance / pas
+     */
+    private static BigDecimal arrondi(BigDecimal distance, BigDecimal pas) {
+        return distance.divide(pas, MathContext.DECIMAL128).setScale(0, RoundingMode.HALF_EVEN);
+    }
+
+    /**
+     * @param distance une distance dans le plan complexe
+     * @param pas le pas de discrétisation
+     * @return distance / pas si c'est un entier, aux erreurs d'arrondi des doubles près,
+     * assez petit pour être un indice de pixel, null sinon
+     */
+    private static Long decalage(BigDecimal distance, BigDecimal pas) {
+        BigDecimal q = distance.divide(pas, MathContext.DECIMAL128);
+        BigDecimal n = q.setScale(0, RoundingMode.HALF_EVEN);
+        if (q.subtract(n).abs().doubleValue() > TOLERANCE || n.toBigInteger().bitLength() >= 31)
+            return null;
+        return n.longValue();
+    }
+
+    /**
+     * État des orbites des pixels d'une image qui ont atteint maxIter sans être reconnus
+     * comme intérieurs, pour reprendre leur itération quand maxIter augmente. Les pixels qui
+     * ont atteint maxIter sans que leur orbite soit connue (copiés d'une autre image, pris
+     * dans le cache ou remplis par subdivision) sont à itérer depuis le début
+     */
+    static final class Orbites {
+        /**
+         * les positions des pixels dans l'image, ligne par ligne
+         */
+        final int[] positions;
+        /**
+         * les parties réelles des derniers points des orbites
+         */
+        final double[] zRe;
+        /**
+         * les parties imaginaires des derniers points des orbites
+         */
+        final double[] zIm;
+        /**
+         * les positions des pixels dont l'orbite n'est pas connue
+         */
+        final int[] inconnues;
+        /**
+         * true si les orbites ont été calculées avec les coordonnées des tuiles, false avec
+         * celles de l'image entière
+         */
+        final boolean grille;
+
+        /**
+         * Construit l'état des orbites d'une liste de pixels
+         * @param positions les positions des pixels dans l'image
+         * @param zRe les parties réelles des derniers points des orbites
+         * @param zIm les parties imaginaires des derniers points des orbites
+         * @param inconnues les positions des pixels dont l'orbite n'est pas connue
+         * @param grille true si les orbites ont été calculées avec les coordonnées des tuiles
+         */
+        Orbites(int[] positions, double[] zRe, double[] zIm, int[] inconnues, boolean grille) {
+            this.positions = positions;
+            this.zRe = zRe;
+            this.zIm = zIm;
+            this.inconnues = inconnues;
+            this.grille = grille;
+        }
+
+        /**
+         * Construit l'état des orbites des pixels d'une image qui ont atteint maxIter
+         * @param indices les indices de divergence de l'image, ligne par ligne
+         * @param maxIter le maximum d'itération de l'image
+         * @param zRe les parties réelles des derniers points des orbites de tous les pixels :
+         * NaN pour les pixels intérieurs, Double.POSITIVE_INFINITY si l'orbite n'est pas connue
+         * @param zIm les parties imaginaires des derniers points des orbites de tous les pixels
+         * @param grille true si les orbites ont été calculées avec les coordonnées des tuiles
+         * @return l'état des orbites des pixels qui ont atteint maxIter
+         */
+        static Orbites de(int[] indices, int maxIter, double[] zRe, double[] zIm, boolean grille) {
+            int n = 0;
+            int inconnus = 0;
+            for (int i = 0; i < indices.length; i++) {
+                if (indices[i] == maxIter && zRe[i] == Double.POSITIVE_INFINITY)
+                    inconnus++;
+                else if (indices[i] == maxIter && !Double.isNaN(zRe[i]))
+                    n++;
+            }
+            int[] positions = new int[n];
+            double[] re = new double[n];
+            double[] im = new double[n];
+            int[] inconnues = new int[inconnus];
+            n = 0;
+            inconnus = 0;
+            for (int i = 0; i < indices.length; i++) {
+                if (indices[i] == maxIter && zRe[i] == Double.POSITIVE_INFINITY)
+                    inconnues[inconnus++] = i;
+                else if (indices[i] == maxIter && !Double.isNaN(zRe[i])) {
+                    positions[n] = i;
+                    re[n] = zRe[i];
+                    im[n++] = zIm[i];
+                }
+            }
+            return new Orbites(positions, re, im, inconnues, grille);
+        }
+    }
+}
\ No newline at end of file
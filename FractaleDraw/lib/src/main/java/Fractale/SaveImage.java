@@ -2,64 +2,85 @@ package Fractale;
 
 
 import java.awt.image.BufferedImage;
+import java.io.BufferedOutputStream;
 import java.io.BufferedReader;
 import java.io.File;
 import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
 import java.io.FileReader;
 import java.io.FileWriter;
 import java.io.IOException;
-
-import javax.imageio.ImageIO;
+import java.io.OutputStream;
+import java.math.BigDecimal;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.zip.Deflater;
 
 /**
  * Classe qui permet de sauvegarder l'image d'une FractaleImage dans un fichier PNG
  * et sa configuration dans un fichier TXT
  */
 public class SaveImage {
+    /**
+     * le nombre de pixels au-delà duquel une image à calculer est écrite par bandes,
+     * sans être gardée entière en mémoire
+     */
+    private static final long PIXELS_MAX_IMAGE = 1L << 25;
+    /**
+     * le nombre approximatif de pixels d'une bande
+     */
+    private static final long PIXELS_BANDE = 1L << 22;
+    /**
+     * le niveau de compression des PNG, de 0 à 9 ou -1 pour le niveau par défaut
+     */
+    private static int compression = Deflater.DEFAULT_COMPRESSION;
+
+    /**
+     * Fixe le niveau de compression des PNG écrits
+     * @param niveau le niveau, de 0 (rapide, fichiers gros) à 9 (lent, fichiers petits)
+     */
+    public static void setCompression(int niveau) {
+        if (niveau < 0 || niveau > 9)
+            throw new IllegalArgumentException("le niveau de compression doit être entre 0 et 9");
+        compression = niveau;
+    }
+
+    /**
+     * @return le niveau de compression des PNG écrits
+     */
+    static int getCompression() {
+        return compression;
+    }
 
     /**
      * Sauvegarde l'image et la configuration d'une FractaleImage dans un fichier PNG et TXT
-     * sous un nom filename
+     * sous un nom filename. Une image à calculer de plus de PIXELS_MAX_IMAGE pixels est
+     * calculée et écrite par bandes. Si les indices de divergence du modèle sont déjà connus,
+     * l'image est seulement coloriée
      * @param filename le nom du fichier
      * @param modele le modèle
      */
     public static void save(String filename, FractaleImage modele) {
         BufferedImage image = modele.getImage();
-        if (image == null) {
-            modele.calculImage();
-        }
-        image = modele.getImage();
-
-        File file = new File(filename + ".png");
+        Configuration configuration = modele.getConfiguration();
         try {
-            ImageIO.write(image, "PNG", file);
+            if (image == null && parBandes(configuration))
+                writeBandes(filename, modele);
+            else {
+                if (image == null && !modele.colorie())
+                    modele.calculImage();
+                writeImage(filename, modele.getImage());
+            }
         } catch (IOException e) {
             System.err.println(e.getMessage());
             System.exit(-1);
         }
 
-        file = new File(filename + ".txt");
+        File file = new File(filename + ".txt");
         try (FileWriter fw = new FileWriter(file)) {
-            Configuration config = modele.getConfiguration();
-            if (modele.getFractale() instanceof Mandelbrot) {
-                fw.write("-m");
-            } else {
-                fw.write("-j " + ((Julia) modele.getFractale()).getFonction());
-            }
-            fw.write(" -i " + config.getMaxIter());
-            fw.write(" -p " + config.getPas());
-            double minRe = config.getMinRe();
-            double maxRe = config.getMaxRe();
-            double minIm = config.getMinIm();
-            double maxIm = config.getMaxIm();
-            fw.write(" -P " + minRe + " " + maxRe + " " + minIm + " " + maxIm);
-            fw.write(" -t " + config.getLongueur() + " " + config.getLargeur());
-            fw.write(" -c " + (config.getConvergentColor() == -1 ? -1 : Integer.toHexString(config.getConvergentColor())));
-            if (config.getColor().isRGB()) {
-                fw.write(" -R " + config.getColor().getV1() + " " + config.getColor().getV2() + " " + config.getColor().getV3());
-            } else {
-                fw.write(" -H " + config.getColor().getV1() + " " + config.getColor().getV2() + " " + config.getColor().getV3());
-            }
+            fw.write(ligneConfiguration(modele.getFractale(), modele.getConfiguration()));
             fw.write("\n");
             fw.flush();
         } catch (IOException e) {
@@ -69,14 +90,128 @@ public class SaveImage {
 
     }
 
+    /**
+     * @param configuration la configuration d'une image à calculer
+     * @return true si l'image a plus de PIXELS_MAX_IMAGE pixels et doit être calculée et écrite
+     * par bandes plutôt que gardée entière en mémoire
+     */
+    static boolean parBandes(Configuration configuration) {
+        return (long) configuration.getLongueur() * configuration.getLargeur() > PIXELS_MAX_IMAGE;
+    }
+
+    /**
+     * Sauvegarde une image dans un fichier PNG sous un nom filename, compressé en parallèle
+     * @param filename le nom du fichier, sans l'extension
+     * @param image l'image
+     * @throws IOException si le fichier ne peut pas être écrit
+     */
+    static void writeImage(String filename, BufferedImage image) throws IOException {
+        try (OutputStream out = new BufferedOutputStream(new FileOutputStream(filename + ".png"));
+                PngFlux png = new PngFlux(out, image.getWidth(), image.getHeight(), compression)) {
+            png.ecrit(image);
+        }
+    }
+
+    /**
+     * Calcule l'image d'une FractaleImage par bandes horizontales d'environ PIXELS_BANDE pixels
+     * et écrit chaque bande dans un fichier PNG sous un nom filename pendant le calcul de la
+     * suivante : au plus deux bandes sont en mémoire, quelle que soit la taille de l'image
+     * @param filename le nom du fichier, sans l'extension
+     * @param modele le modèle
+     * @throws IOException si le fichier ne peut pas être écrit ou si le calcul a été interrompu
+     */
+    static void writeBandes(String filename, FractaleImage modele) throws IOException {
+        Configuration config = modele.getConfiguration();
+        int longueur = config.getLongueur();
+        int largeur = config.getLargeur();
+        int hauteur = (int) Math.max(1, Math.min(largeur, PIXELS_BANDE / longueur));
+        ExecutorService ecriture = Executors.newSingleThreadExecutor();
+        try (OutputStream out = new BufferedOutputStream(new FileOutputStream(filename + ".png"));
+                PngFlux png = new PngFlux(out, longueur, largeur, compression)) {
+            Future<?> precedente = null;
+            for (int y = 0; y < largeur; y += hauteur) {
+                FractaleImage bande = modele.bande(y, Math.min(hauteur, largeur - y));
+                if (!bande.colorie())
+                    bande.calculImage();
+                BufferedImage image = bande.getImage();
+                if (image == null)
+                    throw new IOException("le calcul de l'image a été interrompu");
+                attend(precedente);
+                precedente = ecriture.submit(() -> {
+                    png.ecrit(image);
+                    return null;
+                });
+            }
+            attend(precedente);
+        } finally {
+            ecriture.shutdown();
+        }
+    }
+
+    /**
+     * Attend la fin de l'écriture d'une bande
+     * @param ecriture l'écriture, ou null
+     * @throws IOException si l'écriture a échoué ou a été interrompue
+     */
+    static void attend(Future<?> ecriture) throws IOException {
+        if (ecriture == null)
+            return;
+        try {
+            ecriture.get();
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException)
+                throw (IOException) e.getCause();
+            throw new IOException(e.getCause());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("écriture interrompue", e);
+        }
+    }
+
+    /**
+     * @param fractale une fractale
+     * @param config une configuration
+     * @return les arguments de la ligne de commande qui redonnent la fractale et la configuration,
+     * séparés par des espaces
+     */
+    static String ligneConfiguration(Fractale fractale, Configuration config) {
+        StringBuilder res = new StringBuilder();
+        if (fractale instanceof Mandelbrot) {
+            res.append("-m");
+        } else {
+            res.append("-j ").append(((Julia) fractale).getFonction());
+        }
+        res.append(" -i ").append(config.getMaxIter());
+        res.append(" -p ").append(config.getPas());
+        BigDecimal minRe = config.getMinReExact();
+        BigDecimal maxRe = config.getMaxReExact();
+        BigDecimal minIm = config.getMinImExact();
+        BigDecimal maxIm = config.getMaxImExact();
+        res.append(" -P ").append(minRe).append(" ").append(maxRe).append(" ").append(minIm).append(" ").append(maxIm);
+        res.append(" -t ").append(config.getLongueur()).append(" ").append(config.getLargeur());
+        res.append(" -c ").append(config.getConvergentColor() == -1 ? "-1" : Integer.toHexString(config.getConvergentColor()));
+        if (config.getColor().isRGB()) {
+            res.append(" -R ");
+        } else {
+            res.append(" -H ");
+        }
+        res.append(config.getColor().getV1()).append(" ").append(config.getColor().getV2()).append(" ").append(config.getColor().getV3());
+        if (config.isPeriodicite()) {
+            res.append(" -d");
+        }
+        if (config.isSubdivision()) {
+            res.append(" -s");
+        }
+        return res.toString();
+    }
+
     /**
      * @param filename le nom du fichier
      * @return un tableau des arguments de la configuration dans filename
      */
     public static String[] readConfig(String filename) {
-        try (BufferedReader rd = new BufferedReader(new FileReader(filename))) {
-            String config = rd.readLine();
-            return config.split(" ");
+        try {
+            return parseConfig(filename);
         } catch (FileNotFoundException ex) {
             System.err.println(ex.getMessage());
             System.exit(-1);
@@ -86,4 +221,18 @@ public class SaveImage {
         }
         return null;
     }
+
+    /**
+     * @param filename le nom du fichier
+     * @return un tableau des arguments de la configuration dans filename
+     * @throws IOException si le fichier ne peut pas être lu ou est vide
+     */
+    static String[] parseConfig(String filename) throws IOException {
+        try (BufferedReader rd = new BufferedReader(new FileReader(filename))) {
+            String config = rd.readLine();
+            if (config == null)
+                throw new IOException(filename + " est vide");
+            return config.split(" ");
+        }
+    }
 }
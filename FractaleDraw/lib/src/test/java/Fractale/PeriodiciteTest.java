@@ -0,0 +1,61 @@
+package Fractale;
+
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * Vérifie que la détection des orbites périodiques donne exactement les mêmes indices de
+ * divergence que l'itération complète, sur des grilles qui couvrent le bord des fractales
+ */
+class PeriodiciteTest {
+    /**
+     * le nombre maximum d'itération des grilles
+     */
+    private static final int MAX_ITER = 2000;
+
+    /**
+     * Compare les deux calculs sur une grille de n × n points
+     * @param fractale la fractale
+     * @param minRe la partie réelle du coin en haut à gauche
+     * @param maxIm la partie imaginaire du coin en haut à gauche
+     * @param pas l'écart entre deux points de la grille
+     * @param n le nombre de points de chaque côté
+     */
+    private static void compare(Fractale fractale, double minRe, double maxIm, double pas, int n) {
+        double tolerance = new Configuration.Builder().pas(pas).build().getTolerance();
+        for (int y = 0; y < n; y++) {
+            for (int x = 0; x < n; x++) {
+                double re = minRe + x * pas;
+                double im = maxIm - y * pas;
+                assertEquals(fractale.divergenceIndex(re, im, MAX_ITER),
+                        fractale.divergenceIndex(re, im, MAX_ITER, tolerance),
+                        "point (" + re + ", " + im + ")");
+            }
+        }
+    }
+
+    @Test
+    void mandelbrot() {
+        Fractale m = Mandelbrot.getInstance();
+        compare(m, -2.0, 1.2, 2.4 / 300, 300);
+        // la vallée des hippocampes, entre la cardioïde et le disque de période 2
+        compare(m, -0.7445, 0.1325, 1e-3 / 200, 200);
+        // l'antenne, où les orbites de grande période convergent lentement
+        compare(m, -1.7690, 0.0005, 1e-3 / 200, 200);
+    }
+
+    @Test
+    void juliaQuadratique() {
+        Julia j = new Julia("(-0.8+0.156i)z^0+(1)z^2");
+        compare(j, -1.6, 1.0, 2.0 / 250, 250);
+        compare(new Julia("(-0.123+0.745i)z^0+(1)z^2"), -1.5, 1.5, 3.0 / 250, 250);
+    }
+
+    @Test
+    void juliaCubique() {
+        compare(new Julia("(0.4)z^0+(1)z^3"), -1.5, 1.5, 3.0 / 250, 250);
+        compare(new Julia("(-0.54+0.54i)z^0+(1)z^3"), -1.2, 1.2, 2.4 / 250, 250);
+    }
+}
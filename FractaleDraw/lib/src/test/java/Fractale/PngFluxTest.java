@@ -0,0 +1,106 @@
+package Fractale;
+
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Random;
+
+import javax.imageio.ImageIO;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * Vérifie que les PNG écrits par PngFlux sont relus par ImageIO avec exactement les pixels
+ * écrits, à tous les niveaux de compression, quel que soit le découpage en morceaux et
+ * en mode en ligne
+ */
+class PngFluxTest {
+    /**
+     * les niveaux de compression essayés
+     */
+    private static final int[] NIVEAUX = {0, 1, 6, 9};
+
+    /**
+     * @param longueur la longueur de l'image
+     * @param largeur la largeur de l'image
+     * @return une image RGB faite de dégradés, que les filtres compressent bien, et de bruit
+     */
+    private static BufferedImage image(int longueur, int largeur) {
+        BufferedImage res = new BufferedImage(longueur, largeur, BufferedImage.TYPE_INT_RGB);
+        Random hasard = new Random(longueur * 31L + largeur);
+        for (int y = 0; y < largeur; y++)
+            for (int x = 0; x < longueur; x++)
+                res.setRGB(x, y, y % 7 == 0 ? hasard.nextInt() & 0xFFFFFF : (x & 0xFF) << 16 | (y & 0xFF) << 8 | ((x + y) & 0xFF));
+        return res;
+    }
+
+    /**
+     * Écrit une image à chaque niveau de compression, en parallèle puis en ligne, la relit
+     * et compare les pixels
+     * @param image l'image
+     * @throws IOException si l'image ne peut pas être écrite ou relue
+     */
+    private static void allerRetour(BufferedImage image) throws IOException {
+        for (int niveau : NIVEAUX) {
+            for (boolean enLigne : new boolean[] {false, true}) {
+                ByteArrayOutputStream out = new ByteArrayOutputStream();
+                try (PngFlux png = new PngFlux(out, image.getWidth(), image.getHeight(), niveau, enLigne)) {
+                    png.ecrit(image);
+                }
+                String cas = "niveau " + niveau + (enLigne ? " en ligne" : "");
+                BufferedImage lue = ImageIO.read(new ByteArrayInputStream(out.toByteArray()));
+                assertNotNull(lue, cas);
+                assertEquals(image.getWidth(), lue.getWidth());
+                assertEquals(image.getHeight(), lue.getHeight());
+                for (int y = 0; y < image.getHeight(); y++)
+                    for (int x = 0; x < image.getWidth(); x++)
+                        assertEquals(image.getRGB(x, y) & 0xFFFFFF, lue.getRGB(x, y) & 0xFFFFFF,
+                                cas + ", pixel (" + x + ", " + y + ")");
+            }
+        }
+    }
+
+    @Test
+    void petiteImage() throws IOException {
+        allerRetour(image(37, 23));
+    }
+
+    @Test
+    void plusieursMorceaux() throws IOException {
+        // 1201 octets filtrés par ligne : environ quatre morceaux, le dernier incomplet
+        allerRetour(image(400, 401));
+    }
+
+    @Test
+    void unPixelDeLarge() throws IOException {
+        // 4 octets filtrés par ligne : deux morceaux dont la fin ne tombe pas sur une ligne entière
+        allerRetour(image(1, 50001));
+    }
+
+    @Test
+    void sousImage() throws IOException {
+        // une bande qui ne commence pas au début du tableau et dont les lignes sont espacées
+        allerRetour(image(300, 200).getSubimage(37, 51, 101, 77));
+    }
+
+    @Test
+    void parLignes() throws IOException {
+        BufferedImage image = image(129, 65);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        int[] pixels = new int[129 * 65];
+        image.getRGB(0, 0, 129, 65, pixels, 0, 129);
+        try (PngFlux png = new PngFlux(out, 129, 65)) {
+            for (int y = 0; y < 65; y++)
+                png.ecrit(pixels, y * 129);
+        }
+        BufferedImage lue = ImageIO.read(new ByteArrayInputStream(out.toByteArray()));
+        for (int y = 0; y < 65; y++)
+            for (int x = 0; x < 129; x++)
+                assertEquals(pixels[y * 129 + x] & 0xFFFFFF, lue.getRGB(x, y) & 0xFFFFFF);
+    }
+}
@@ -0,0 +1,164 @@
+package Fractale;
+
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.math.BigDecimal;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * Vérifie qu'une image calculée avec la reprise activée garde l'état des orbites de ses pixels
+ * qui atteignent maxIter : quand maxIter passe de AVANT à APRES, ces pixels sont itérés depuis
+ * l'itération AVANT, les autres depuis le début, et l'image est celle d'un calcul complet
+ */
+class RepriseTest {
+    /**
+     * le maximum d'itération du premier calcul
+     */
+    private static final int AVANT = 50;
+    /**
+     * le maximum d'itération du calcul repris
+     */
+    private static final int APRES = 200;
+
+    /**
+     * Mandelbrot qui compte les itérations reprises selon leur point de départ
+     */
+    private static final class Comptee extends Fractale {
+        /**
+         * la fractale calculée
+         */
+        private final Mandelbrot mandelbrot = Mandelbrot.getInstance();
+        /**
+         * le nombre de pixels itérés depuis le début
+         */
+        private final AtomicInteger depuisDebut = new AtomicInteger();
+        /**
+         * le nombre de pixels repris depuis l'itération AVANT
+         */
+        private final AtomicInteger depuisAvant = new AtomicInteger();
+        /**
+         * le nombre de pixels repris depuis une autre itération
+         */
+        private final AtomicInteger autres = new AtomicInteger();
+
+        @Override
+        public int divergenceIndex(double re, double im, int maxIter) {
+            depuisDebut.incrementAndGet();
+            return mandelbrot.divergenceIndex(re, im, maxIter);
+        }
+
+        @Override
+        public int divergenceIndex(double re, double im, int maxIter, double tolerance) {
+            depuisDebut.incrementAndGet();
+            return mandelbrot.divergenceIndex(re, im, maxIter, tolerance);
+        }
+
+        @Override
+        int reprise(double re, double im, double[] z, int ite, int maxIter, double tolerance) {
+            (ite == 0 ? depuisDebut : ite == AVANT ? depuisAvant : autres).incrementAndGet();
+            return mandelbrot.reprise(re, im, z, ite, maxIter, tolerance);
+        }
+
+        @Override
+        public Fractale copy() {
+            return this;
+        }
+
+        /**
+         * Remet les compteurs à zéro
+         */
+        private void raz() {
+            depuisDebut.set(0);
+            depuisAvant.set(0);
+            autres.set(0);
+        }
+    }
+
+    /**
+     * @param maxIter le maximum d'itération
+     * @return la configuration d'une vue du bord de l'ensemble, avec la reprise activée
+     */
+    private static Configuration configuration(int maxIter) {
+        return new Configuration.Builder().maxIter(maxIter).pas(0.002).planComplexe(-0.8, -0.4, 0.0, 0.4)
+                .taille(200, 200).reprise(true).build();
+    }
+
+    /**
+     * @param image une image calculée
+     * @return les indices de divergence de l'image
+     */
+    private static int[] indices(FractaleImage image) {
+        Indices indices = image.getIndices();
+        int[] res = new int[image.getConfiguration().getLongueur() * image.getConfiguration().getLargeur()];
+        indices.copie(0, res, 0, res.length);
+        return res;
+    }
+
+    /**
+     * @param config la configuration de l'image
+     * @param progressif true pour la calculer par tuiles
+     * @return les indices de divergence de l'image calculée directement, sans reprise
+     */
+    private static int[] reference(Configuration config, boolean progressif) {
+        FractaleImage image = new FractaleImage(Mandelbrot.getInstance(), config);
+        if (progressif)
+            image.calculImageProgressif(() -> { });
+        else
+            image.calculImage();
+        return indices(image);
+    }
+
+    @Test
+    void tuiles() {
+        Comptee fractale = new Comptee();
+        FractaleImage image = new FractaleImage(fractale, configuration(AVANT));
+        image.calculImageProgressif(() -> { });
+        fractale.raz();
+        image.getConfiguration().setMaxIter(APRES);
+        image.calculImageProgressif(() -> { });
+        assertEquals(0, fractale.depuisDebut.get());
+        assertEquals(0, fractale.autres.get());
+        assertTrue(fractale.depuisAvant.get() > 0);
+        assertArrayEquals(reference(configuration(APRES), true), indices(image));
+    }
+
+    @Test
+    void plein() {
+        Comptee fractale = new Comptee();
+        FractaleImage image = new FractaleImage(fractale, configuration(AVANT));
+        image.calculImage();
+        fractale.raz();
+        image.getConfiguration().setMaxIter(APRES);
+        image.calculImageProgressif(() -> { });
+        assertEquals(0, fractale.depuisDebut.get());
+        assertEquals(0, fractale.autres.get());
+        assertTrue(fractale.depuisAvant.get() > 0);
+        assertArrayEquals(reference(configuration(APRES), false), indices(image));
+    }
+
+    @Test
+    void pixelsSansOrbite() {
+        Comptee fractale = new Comptee();
+        FractaleImage image = new FractaleImage(fractale, configuration(AVANT));
+        image.calculImageProgressif(() -> { });
+        // un déplacement de 32 pixels : une partie des pixels vient du cache, sans orbite
+        Configuration config = image.getConfiguration();
+        BigDecimal decalage = BigDecimal.valueOf(config.getPas()).multiply(BigDecimal.valueOf(32));
+        config.updateMaxIm(config.getMaxImExact().add(decalage));
+        image.calculImageProgressif(() -> { });
+        Configuration deplacee = config.copy();
+        fractale.raz();
+        config.setMaxIter(APRES);
+        image.calculImageProgressif(() -> { });
+        assertEquals(0, fractale.autres.get());
+        assertTrue(fractale.depuisDebut.get() > 0);
+        assertTrue(fractale.depuisAvant.get() > 0);
+        deplacee.setMaxIter(APRES);
+        assertArrayEquals(reference(deplacee, true), indices(image));
+    }
+}